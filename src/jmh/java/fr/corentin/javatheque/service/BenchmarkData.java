@@ -0,0 +1,137 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inputs shared by the benchmarks. TMDB payloads are generated with the field layout and sizes of real
+ * responses: movieWithCredits is an average feature film, largeMovieWithCredits an ensemble blockbuster
+ * (about 250 cast and 1500 crew entries, over 500 KB), searchResults a full page of /search/movie.
+ */
+final class BenchmarkData {
+
+    static final int MOVIE_ID = 299534;
+
+    private BenchmarkData() {
+    }
+
+    static String movieWithCredits() {
+        return movieWithCredits(40, 120);
+    }
+
+    static String largeMovieWithCredits() {
+        return movieWithCredits(250, 1500);
+    }
+
+    static String searchResults() {
+        StringBuilder json = new StringBuilder("{\"page\":1,\"results\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"adult\":false,\"backdrop_path\":\"/fNG7i7RqMErkcqhohV2a6cV1Ehy").append(i)
+                    .append(".jpg\",\"genre_ids\":[28,878],\"id\":").append(603 + i)
+                    .append(",\"original_language\":\"en\",\"original_title\":\"The Matrix ").append(i)
+                    .append("\",\"overview\":\"")
+                    .append("Set in the 22nd century, The Matrix tells the story of a computer hacker. ".repeat(3))
+                    .append("\",\"popularity\":").append(80.0 / (i + 1))
+                    .append(",\"poster_path\":\"/f89U3ADr1oiB1s9GkdPOEpXUk5H").append(i)
+                    .append(".jpg\",\"release_date\":\"").append(1999 + i)
+                    .append("-03-31\",\"title\":\"The Matrix ").append(i)
+                    .append("\",\"video\":false,\"vote_average\":8.2,\"vote_count\":").append(26000 - i * 100)
+                    .append('}');
+        }
+        return json.append("],\"total_pages\":4,\"total_results\":67}").toString();
+    }
+
+    /**
+     * Library films as stored, with a director and ten actors like films hydrated from TMDB.
+     */
+    static List<Film> films(int count) {
+        List<Film> films = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Film film = new Film();
+            film.setId(MOVIE_ID + i);
+            film.setLibraryId("3f1c9a52-6a7e-4f0e-9d43-2b8f5c1d7e90");
+            film.setPoster("/ulzhLuWrPK07P1YkdWQLZnQh1JL.jpg");
+            film.setLang("en-US");
+            film.setSupport("Blu-ray");
+            film.setTitle("Avengers: Endgame " + i);
+            film.setDescription("After the devastating events of Avengers: Infinity War, the universe is in ruins.");
+            film.setReleaseDate("2019-04-24");
+            film.setYear("2019");
+            film.setRate(8.5f);
+            film.setOpinion("No opinion yet");
+            film.setDirector(new Person("Anthony", "Russo"));
+            List<Person> actors = new ArrayList<>();
+            for (int j = 0; j < TMDBMovieParser.MAX_ACTORS; j++) {
+                actors.add(new Person("Actor " + j, "Member " + i));
+            }
+            film.setActors(actors);
+            films.add(film);
+        }
+        return films;
+    }
+
+    private static String movieWithCredits(int castSize, int crewSize) {
+        StringBuilder json = new StringBuilder(castSize * 400 + crewSize * 350 + 4096);
+        json.append("{\"adult\":false,\"backdrop_path\":\"/7RyHsO4yDXtBv1zUU3mTpHeQ0d5.jpg\",")
+                .append("\"belongs_to_collection\":{\"id\":86311,\"name\":\"The Avengers Collection\",")
+                .append("\"poster_path\":\"/yFSIUVTCvgYrpalUktulvk3Gi5Y.jpg\",\"backdrop_path\":\"/zuW6fOiusv4X9nnW3paHGfXcSll.jpg\"},")
+                .append("\"budget\":356000000,\"genres\":[{\"id\":12,\"name\":\"Adventure\"},")
+                .append("{\"id\":878,\"name\":\"Science Fiction\"},{\"id\":28,\"name\":\"Action\"}],")
+                .append("\"homepage\":\"https://www.marvel.com/movies/avengers-endgame\",\"id\":").append(MOVIE_ID)
+                .append(",\"imdb_id\":\"tt4154796\",\"origin_country\":[\"US\"],\"original_language\":\"en\",")
+                .append("\"original_title\":\"Avengers: Endgame\",\"overview\":\"")
+                .append("After the devastating events of Avengers: Infinity War, the universe is in ruins. ".repeat(3))
+                .append("\",\"popularity\":21.7,\"poster_path\":\"/ulzhLuWrPK07P1YkdWQLZnQh1JL.jpg\",")
+                .append("\"production_companies\":[{\"id\":420,\"logo_path\":\"/hUzeosd33nzE5MCNsZxCGEKTXaQ.png\",")
+                .append("\"name\":\"Marvel Studios\",\"origin_country\":\"US\"}],")
+                .append("\"production_countries\":[{\"iso_3166_1\":\"US\",\"name\":\"United States of America\"}],")
+                .append("\"release_date\":\"2019-04-24\",\"revenue\":2799439100,\"runtime\":181,")
+                .append("\"spoken_languages\":[{\"english_name\":\"English\",\"iso_639_1\":\"en\",\"name\":\"English\"}],")
+                .append("\"status\":\"Released\",\"tagline\":\"Avenge the fallen.\",\"title\":\"Avengers: Endgame\",")
+                .append("\"video\":false,\"vote_average\":8.2,\"vote_count\":26612,\"credits\":{\"cast\":[");
+        for (int i = 0; i < castSize; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            // A few cast members are better known for another department, like in real credits
+            String department = i % 7 == 3 ? "Directing" : "Acting";
+            json.append("{\"adult\":false,\"gender\":").append(i % 3)
+                    .append(",\"id\":").append(10_000 + i)
+                    .append(",\"known_for_department\":\"").append(department)
+                    .append("\",\"name\":\"Cast Member ").append(i)
+                    .append("\",\"original_name\":\"Cast Member ").append(i)
+                    .append("\",\"popularity\":").append(50.0 / (i + 1))
+                    .append(",\"profile_path\":\"/5qHNjhtjMD4YWH3UP0rm4tKwxCL").append(i)
+                    .append(".jpg\",\"cast_id\":").append(500 + i)
+                    .append(",\"character\":\"Character ").append(i)
+                    .append(" (uncredited)\",\"credit_id\":\"5e85e8083344c60015411cfa").append(i)
+                    .append("\",\"order\":").append(i).append('}');
+        }
+        json.append("],\"crew\":[");
+        for (int i = 0; i < crewSize; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            // The directors are listed somewhere in the middle of the crew
+            boolean director = i == crewSize / 2 || i == crewSize / 2 + 1;
+            json.append("{\"adult\":false,\"gender\":").append(i % 3)
+                    .append(",\"id\":").append(100_000 + i)
+                    .append(",\"known_for_department\":\"").append(director ? "Directing" : "Crew")
+                    .append("\",\"name\":\"Crew Member ").append(i)
+                    .append("\",\"original_name\":\"Crew Member ").append(i)
+                    .append("\",\"popularity\":").append(10.0 / (i + 1))
+                    .append(",\"profile_path\":null,\"credit_id\":\"5c9ba2e0c3a36812a6a3b3fc").append(i)
+                    .append("\",\"department\":\"").append(director ? "Directing" : "Visual Effects")
+                    .append("\",\"job\":\"").append(director ? "Director" : "Visual Effects Artist")
+                    .append("\"}");
+        }
+        return json.append("]}}").toString();
+    }
+
+}
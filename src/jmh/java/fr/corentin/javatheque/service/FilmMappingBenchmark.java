@@ -0,0 +1,54 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to response mapping, done for every film of every library listing, and the split of TMDB names
+ * done for the director and each actor of a hydrated film.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilmMappingBenchmark {
+
+    private Film film;
+
+    @Setup
+    public void setUp() {
+        film = BenchmarkData.films(1).get(0);
+    }
+
+    @Benchmark
+    public FilmDTO.Response mapToFilmResponse() {
+        return FilmService.mapToFilmResponse(film);
+    }
+
+    @Benchmark
+    public Person parsePersonName(Names names) {
+        return TMDBService.parsePersonName(names.name);
+    }
+
+    /**
+     * Names of one, two and more words, in a state of their own so the mapping benchmark runs once.
+     */
+    @State(Scope.Benchmark)
+    public static class Names {
+
+        @Param({"Zendaya", "Keanu Reeves", "Samuel L. Jackson"})
+        public String name;
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a library listing, written to a discarding stream like a response body
+ * so only the serializer is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilmResponseSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    public int films;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final OutputStream output = OutputStream.nullOutputStream();
+    private List<FilmDTO.Response> responses;
+
+    @Setup
+    public void setUp() {
+        responses = BenchmarkData.films(films).stream()
+                .map(FilmService::mapToFilmResponse)
+                .toList();
+    }
+
+    @Benchmark
+    public void serialize() {
+        jsonMapper.writeValue(output, responses);
+    }
+
+}
@@ -0,0 +1,46 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The other JSON handled on TMDB lookups: a page of search results parsed into a tree (title resolution
+ * of file imports), and the compact movie record read back from the disk cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TMDBJsonBenchmark {
+
+    private final Gson gson = new Gson();
+    private String searchResults;
+    private String cachedMovie;
+
+    @Setup
+    public void setUp() {
+        searchResults = BenchmarkData.searchResults();
+        TMDBMovieDTO movie = TMDBMovieParser.parseMovieWithCredits(BenchmarkData.MOVIE_ID, BenchmarkData.movieWithCredits());
+        cachedMovie = gson.toJson(movie);
+    }
+
+    @Benchmark
+    public JsonObject searchResults() {
+        return gson.fromJson(searchResults, JsonObject.class);
+    }
+
+    @Benchmark
+    public TMDBMovieDTO cachedMovie() {
+        return gson.fromJson(cachedMovie, TMDBMovieDTO.class);
+    }
+
+}
@@ -0,0 +1,71 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Tree (JsonObject) versus pull (TMDBMovieParser) parsing of a movie fetched with append_to_response=credits.
+ * Run with ./gradlew jmh, the gc profiler reports the bytes allocated per call (gc.alloc.rate.norm).
+ * See BenchmarkData for the payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TMDBMovieParserBenchmark {
+
+    @Param({"typical", "large"})
+    public String payload;
+
+    private final Gson gson = new Gson();
+    private String json;
+
+    @Setup
+    public void setUp() {
+        json = "large".equals(payload) ? BenchmarkData.largeMovieWithCredits() : BenchmarkData.movieWithCredits();
+    }
+
+    @Benchmark
+    public TMDBMovieDTO tree() {
+        JsonObject movie = gson.fromJson(json, JsonObject.class);
+        JsonObject credits = movie.getAsJsonObject("credits");
+        JsonArray cast = credits.getAsJsonArray("cast");
+        JsonArray crew = credits.getAsJsonArray("crew");
+        String director = StreamSupport.stream(crew.spliterator(), false)
+                .map(JsonElement::getAsJsonObject)
+                .filter(member -> member.has("job") && "Director".equals(member.get("job").getAsString()))
+                .findFirst()
+                .map(member -> member.get("name").getAsString())
+                .orElse(null);
+        List<String> actors = StreamSupport.stream(cast.spliterator(), false)
+                .map(JsonElement::getAsJsonObject)
+                .filter(member -> member.has("known_for_department")
+                        && "Acting".equalsIgnoreCase(member.get("known_for_department").getAsString()))
+                .limit(TMDBMovieParser.MAX_ACTORS)
+                .map(member -> member.get("name").getAsString())
+                .collect(Collectors.toList());
+        return new TMDBMovieDTO(BenchmarkData.MOVIE_ID, movie.get("title").getAsString(), movie.get("overview").getAsString(),
+                movie.get("poster_path").getAsString(), movie.get("release_date").getAsString(), director, actors);
+    }
+
+    @Benchmark
+    public TMDBMovieDTO pull() {
+        return TMDBMovieParser.parseMovieWithCredits(BenchmarkData.MOVIE_ID, json);
+    }
+
+}
@@ -0,0 +1,57 @@
+package fr.corentin.javatheque.configuration;
+
+import fr.corentin.javatheque.controller.SessionUser;
+import fr.corentin.javatheque.service.AuthTokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Authenticates requests carrying a valid token, from the Authorization Bearer header or the token cookie,
+ * by exposing the SessionUser as a request attribute. Requests without a valid token go on anonymous,
+ * the controllers answer 401 as for a session without user.
+ */
+class AuthTokenFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    private final AuthTokenService authTokenService;
+
+    AuthTokenFilter(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String token = token(request);
+        if (token != null) {
+            authTokenService.verify(token).ifPresent(claims -> request.setAttribute(SessionUser.REQUEST_ATTRIBUTE,
+                    new SessionUser(claims.getUserId(), claims.getLibraryId())));
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static String token(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (SessionUser.TOKEN_COOKIE.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+}
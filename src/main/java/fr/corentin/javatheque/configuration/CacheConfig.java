@@ -1,31 +1,66 @@
 package fr.corentin.javatheque.configuration;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+import fr.corentin.javatheque.service.LibraryResponseCache;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
-    
+
     /**
      * Configure Caffeine cache manager for TMDB API calls.
      * Cache expires after 1 hour to avoid stale data.
+     * Caches are async so that concurrent lookups of a key share one in-flight TMDB request (see SingleFlightCache),
+     * failed lookups (null) are not cached.
+     * tmdbMovies holds parsed TMDBMovieDTO records and is bounded by their estimated size rather than by entry count.
+     * libraryIds maps users to their library id, which never changes: no expiry, entries are evicted on user deletion.
+     * libraryResponses holds serialized library listings (see LibraryResponseCache) within a byte budget.
      */
     @Bean
-    public CacheManager cacheManager() {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager("tmdbSearches", "tmdbMovies");
+    public CacheManager cacheManager(
+            @Value("${tmdb.cache.movies.max-size:32MB}") DataSize moviesMaxSize,
+            @Value("${library.cache.ids.max-size:10000}") long libraryIdsMaxSize,
+            @Value("${library.cache.responses.max-size:64MB}") DataSize responsesMaxSize) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager("tmdbSearches");
+        cacheManager.setAsyncCacheMode(true);
+        cacheManager.setAllowNullValues(false);
         cacheManager.setCaffeine(Caffeine.newBuilder()
                 .maximumSize(1000)
                 .expireAfterWrite(1, TimeUnit.HOURS)
                 .recordStats());
+        cacheManager.registerCustomCache("tmdbMovies", Caffeine.newBuilder()
+                .maximumWeight(moviesMaxSize.toBytes())
+                .weigher((Object key, Object value) -> value instanceof TMDBMovieDTO movie ? movie.estimatedBytes() : 1)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .recordStats()
+                .buildAsync());
+        cacheManager.registerCustomCache("libraryResponses", Caffeine.newBuilder()
+                .maximumWeight(responsesMaxSize.toBytes())
+                .weigher((Object key, Object value) ->
+                        value instanceof LibraryResponseCache.Body body ? body.estimatedBytes() : 1)
+                .removalListener((Object key, Object value, RemovalCause cause) -> {
+                    if (value instanceof LibraryResponseCache.Body body) {
+                        body.removed();
+                    }
+                })
+                .recordStats()
+                .buildAsync());
+        cacheManager.registerCustomCache("libraryIds", Caffeine.newBuilder()
+                .maximumSize(libraryIdsMaxSize)
+                .recordStats()
+                .build());
         return cacheManager;
     }
-    
-}
 
+}
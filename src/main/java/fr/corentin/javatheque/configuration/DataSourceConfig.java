@@ -0,0 +1,84 @@
+package fr.corentin.javatheque.configuration;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * When datasource.replica.urls lists read replicas, the auto-configured primary DataSource is wrapped in a
+     * ReadWriteRoutingDataSource: read-only transactions go to a pool per replica, everything else stays on the
+     * primary. Replica credentials default to the primary ones.
+     */
+    @Bean
+    static BeanPostProcessor readReplicaRouting(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource primary)
+                        || bean instanceof ReadWriteRoutingDataSource) {
+                    return bean;
+                }
+                List<String> urls = Binder.get(environment)
+                        .bind("datasource.replica.urls", Bindable.listOf(String.class))
+                        .orElse(List.of());
+                if (urls.isEmpty()) {
+                    return bean;
+                }
+                List<DataSource> replicas = new ArrayList<>(urls.size());
+                for (int i = 0; i < urls.size(); i++) {
+                    replicas.add(replicaPool(environment, urls.get(i), i + 1));
+                }
+                return new ReadWriteRoutingDataSource(primary, replicas);
+            }
+        };
+    }
+
+    /**
+     * Same hikaricp.connections.* metrics as the primary pool, tagged with the replica pool names.
+     */
+    @Bean
+    MeterBinder replicaPoolMetrics(ObjectProvider<DataSource> dataSource) {
+        return registry -> {
+            if (dataSource.getIfAvailable() instanceof ReadWriteRoutingDataSource routing) {
+                for (DataSource replica : routing.getReplicas()) {
+                    if (replica instanceof HikariDataSource pool && pool.getMetricRegistry() == null) {
+                        pool.setMetricRegistry(registry);
+                    }
+                }
+            }
+        };
+    }
+
+    private static HikariDataSource replicaPool(Environment environment, String url, int index) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(environment.getProperty("spring.datasource.hikari.pool-name", "javatheque")
+                + "-replica-" + index);
+        config.setJdbcUrl(url);
+        config.setUsername(environment.getProperty("datasource.replica.username",
+                environment.getProperty("spring.datasource.username")));
+        config.setPassword(environment.getProperty("datasource.replica.password",
+                environment.getProperty("spring.datasource.password")));
+        String driverClassName = environment.getProperty("spring.datasource.driver-class-name");
+        if (driverClassName != null) {
+            config.setDriverClassName(driverClassName);
+        }
+        config.setMaximumPoolSize(environment.getProperty("datasource.replica.maximum-pool-size", Integer.class, 10));
+        config.setReadOnly(true);
+        return new HikariDataSource(config);
+    }
+
+}
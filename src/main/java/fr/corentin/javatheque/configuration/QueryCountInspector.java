@@ -0,0 +1,38 @@
+package fr.corentin.javatheque.configuration;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread while a count is started,
+ * registered with hibernate.session_factory.statement_inspector. See QueryCountFilter.
+ * Statements prepared on the raw JDBC connection (Session.doWork) bypass it: such code must pass its SQL through
+ * the session's inspector to be counted, as the JDBC batches of LibraryStatsService and LibraryChangeService do.
+ * A JDBC batch counts as one statement, like a Hibernate batch.
+ */
+public class QueryCountInspector implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+        return sql;
+    }
+
+    static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * Statements prepared since start, the count is cleared.
+     */
+    static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count == null ? 0 : count[0];
+    }
+
+}
@@ -0,0 +1,79 @@
+package fr.corentin.javatheque.configuration;
+
+import fr.corentin.javatheque.service.ReadYourWritesGuard;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Primary DataSource whose read-only transactions run on the replicas, taken in turn.
+ * Connections are fetched lazily, once the transaction has flagged them read-only, which requires
+ * @Transactional(readOnly = true) on the reading service methods. Reads of a recent writer stay on the primary
+ * (see ReadYourWritesGuard).
+ */
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+
+    private final List<DataSource> replicas;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        super(primary);
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.replicas = List.copyOf(replicas);
+        setReadOnlyDataSource(new ReplicaRouter(primary, this.replicas));
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Closes the pools along with the application context, the primary included since this bean replaces it.
+     */
+    @Override
+    public void close() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (getTargetDataSource() instanceof AutoCloseable primary) {
+            primary.close();
+        }
+    }
+
+    private static final class ReplicaRouter extends AbstractRoutingDataSource {
+
+        private final int replicaCount;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private ReplicaRouter(DataSource primary, List<DataSource> replicas) {
+            Map<Object, Object> targets = new HashMap<>();
+            targets.put(PRIMARY, primary);
+            for (int i = 0; i < replicas.size(); i++) {
+                targets.put(i, replicas.get(i));
+            }
+            this.replicaCount = replicas.size();
+            setTargetDataSources(targets);
+            setLenientFallback(false);
+            afterPropertiesSet();
+        }
+
+        @Override
+        protected Object determineCurrentLookupKey() {
+            if (ReadYourWritesGuard.isPrimaryRequired()) {
+                return PRIMARY;
+            }
+            return Math.floorMod(next.getAndIncrement(), replicaCount);
+        }
+    }
+
+}
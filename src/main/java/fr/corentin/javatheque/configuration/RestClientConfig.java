@@ -1,20 +1,29 @@
 package fr.corentin.javatheque.configuration;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
+
 
 @Configuration
 public class RestClientConfig {
     
     /**
      * Create a RestClient.Builder bean for dependency injection.
+     * Connect and read timeouts keep a slow TMDB from holding request threads indefinitely.
      */
     @Bean
-    public RestClient.Builder restClientBuilder() {
-        return RestClient.builder();
+    public RestClient.Builder restClientBuilder(
+            @Value("${tmdb.api.connect-timeout:2s}") Duration connectTimeout,
+            @Value("${tmdb.api.read-timeout:5s}") Duration readTimeout) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        return RestClient.builder().requestFactory(requestFactory);
     }
     
 }
-
@@ -1,12 +1,15 @@
 package fr.corentin.javatheque.configuration;
 
+import fr.corentin.javatheque.service.AuthTokenService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -21,20 +24,33 @@ public class SecurityConfig {
     @Value("${cors.allowed-origins}")
     private String allowedOrigins;
     
+    /**
+     * With auth.mode=token no session is created, requests are authenticated by AuthTokenFilter instead.
+     */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, AuthTokenService authTokenService) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable) // Disable CSRF for REST API
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(auth -> auth
-                        // Allow all requests - authentication is handled manually in controllers via HttpSession
+                        // Allow all requests - authentication is handled manually in controllers (see CurrentUser)
                         .anyRequest().permitAll()
-                )
-                .sessionManagement(session -> session
-                        .maximumSessions(1)
-                        .maxSessionsPreventsLogin(false)
                 );
         
+        if (authTokenService.isEnabled()) {
+            http
+                    .sessionManagement(session -> session
+                            .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    )
+                    .addFilterBefore(new AuthTokenFilter(authTokenService), AnonymousAuthenticationFilter.class);
+        } else {
+            http
+                    .sessionManagement(session -> session
+                            .maximumSessions(1)
+                            .maxSessionsPreventsLogin(false)
+                    );
+        }
+        
         return http.build();
     }
     
@@ -1,69 +1,134 @@
 package fr.corentin.javatheque.controller;
 
 import fr.corentin.javatheque.dto.UserDTO;
+import fr.corentin.javatheque.service.AuthTokenService;
+import fr.corentin.javatheque.service.PasswordHashingOverloadedException;
 import fr.corentin.javatheque.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+
 
 @RestController
 @RequestMapping("/api/auth")
 @RequiredArgsConstructor
 public class AuthController {
     
+    /**
+     * Response header carrying the token at login in token mode, for clients sending it as a Bearer header.
+     */
+    static final String TOKEN_HEADER = "X-Auth-Token";
+    
     private final UserService userService;
+    private final AuthTokenService authTokenService;
+    
+    @Value("${auth.token.cookie-secure:false}")
+    private boolean tokenCookieSecure;
 
     @PostMapping("/register")
     public ResponseEntity<UserDTO.Response> register(
             @Valid @RequestBody UserDTO.Register request,
-            HttpSession session) {
+            HttpServletRequest httpRequest) {
         try {
             UserDTO.Response response = userService.registerUser(request);
-            session.setAttribute("userId", response.getId());
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .headers(signIn(response, httpRequest))
+                    .body(response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (PasswordHashingOverloadedException e) {
+            return overloaded();
         }
     }
 
     @PostMapping("/login")
     public ResponseEntity<UserDTO.Response> login(
             @Valid @RequestBody UserDTO.Login request,
-            HttpSession session) {
+            HttpServletRequest httpRequest) {
         try {
             UserDTO.Response response = userService.loginUser(request);
-            session.setAttribute("userId", response.getId());
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok()
+                    .headers(signIn(response, httpRequest))
+                    .body(response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        } catch (PasswordHashingOverloadedException e) {
+            return overloaded();
         }
     }
 
+    /**
+     * Invalidates the session, or clears the token cookie in token mode (the token itself stays valid until it expires).
+     */
     @PostMapping("/logout")
-    public ResponseEntity<Void> logout(HttpSession session) {
-        session.invalidate();
+    public ResponseEntity<Void> logout(HttpServletRequest httpRequest) {
+        if (authTokenService.isEnabled()) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, tokenCookie("", Duration.ZERO).toString())
+                    .build();
+        }
+        HttpSession session = httpRequest.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
         return ResponseEntity.ok().build();
     }
 
     @GetMapping("/me")
-    public ResponseEntity<UserDTO.Response> getCurrentUser(HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
-        
-        if (userId == null) {
+    public ResponseEntity<UserDTO.Response> getCurrentUser(@CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
         try {
-            UserDTO.Response response = userService.getUserById(userId);
+            UserDTO.Response response = userService.getUserById(user.getUserId());
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
+
+    /**
+     * Logs the user in: session attributes, or a signed token returned as a cookie and a header in token mode.
+     */
+    private HttpHeaders signIn(UserDTO.Response user, HttpServletRequest httpRequest) {
+        HttpHeaders headers = new HttpHeaders();
+        if (authTokenService.isEnabled()) {
+            String token = authTokenService.issue(user.getId(), user.getLibraryId());
+            headers.add(HttpHeaders.SET_COOKIE, tokenCookie(token, authTokenService.getTtl()).toString());
+            headers.set(TOKEN_HEADER, token);
+        } else {
+            SessionUser.store(httpRequest.getSession(), user);
+        }
+        return headers;
+    }
+
+    private ResponseCookie tokenCookie(String token, Duration maxAge) {
+        return ResponseCookie.from(SessionUser.TOKEN_COOKIE, token)
+                .httpOnly(true)
+                .secure(tokenCookieSecure)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    /**
+     * Password hashing is saturated: answer fast and let the client retry, rather than holding the request.
+     */
+    private <T> ResponseEntity<T> overloaded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "1")
+                .build();
+    }
     
 }
-
@@ -0,0 +1,55 @@
+package fr.corentin.javatheque.controller;
+
+import fr.corentin.javatheque.service.LibraryService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Resolves @CurrentUser parameters from the token authenticated request (see AuthTokenFilter) or the session.
+ * Sessions opened before the library id was stored at login get it from LibraryService (cached) once,
+ * it is then kept in the session.
+ */
+@Component
+@RequiredArgsConstructor
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final LibraryService libraryService;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+                && SessionUser.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public SessionUser resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                       NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        if (request != null && request.getAttribute(SessionUser.REQUEST_ATTRIBUTE) instanceof SessionUser user) {
+            return user;
+        }
+        HttpSession session = request != null ? request.getSession(false) : null;
+        if (session == null || !(session.getAttribute(SessionUser.USER_ID) instanceof String userId)) {
+            return null;
+        }
+
+        String libraryId = (String) session.getAttribute(SessionUser.LIBRARY_ID);
+        if (libraryId == null) {
+            try {
+                libraryId = libraryService.getLibraryIdByOwnerId(userId);
+                session.setAttribute(SessionUser.LIBRARY_ID, libraryId);
+            } catch (IllegalArgumentException e) {
+                // No library: left to the handler, SessionUser.getLibraryId() throws
+            }
+        }
+        return new SessionUser(userId, libraryId);
+    }
+
+}
@@ -5,18 +5,29 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.service.CollectionImportService;
+import fr.corentin.javatheque.service.FilmImportService;
+import fr.corentin.javatheque.service.FilmJobService;
 import fr.corentin.javatheque.service.FilmService;
-import fr.corentin.javatheque.service.LibraryService;
 import fr.corentin.javatheque.service.TMDBService;
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 @RestController
@@ -24,9 +35,13 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FilmController {
     
+    private static final int MAX_JOB_WAIT_SECONDS = 30;
+    
     private final FilmService filmService;
-    private final LibraryService libraryService;
     private final TMDBService tmdbService;
+    private final FilmImportService filmImportService;
+    private final CollectionImportService collectionImportService;
+    private final FilmJobService filmJobService;
     private final Gson gson = new Gson();
 
     @GetMapping(value = "/search", produces = "application/json")
@@ -47,22 +62,141 @@ public class FilmController {
     @PostMapping
     public ResponseEntity<FilmDTO.Response> addFilm(
             @Valid @RequestBody FilmDTO.Request request,
-            HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
-        
-        if (userId == null) {
+            @CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
         try {
-            var library = libraryService.getLibraryByOwnerId(userId);
-            FilmDTO.Response response = filmService.addFilm(request, library.getId());
+            FilmDTO.Response response = filmService.addFilm(request, user.getLibraryId());
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
     }
 
+    /**
+     * Queues the addition of a film and answers right away with the job, to be followed on its status endpoint.
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<FilmDTO.Job> submitAddFilm(
+            @Valid @RequestBody FilmDTO.Request request,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            FilmJobService.Job job = filmJobService.submit(request, user.getLibraryId());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/films/jobs/" + job.getId()))
+                    .body(job.toDto());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "5")
+                    .build();
+        }
+    }
+
+    /**
+     * Status of an add-film job. With wait (seconds, at most 30), the response is held without a thread
+     * until the job completes or the wait elapses.
+     */
+    @GetMapping("/jobs/{jobId}")
+    public DeferredResult<ResponseEntity<FilmDTO.Job>> getJob(
+            @PathVariable String jobId,
+            @RequestParam(required = false) Integer wait,
+            @CurrentUser SessionUser user) {
+        DeferredResult<ResponseEntity<FilmDTO.Job>> result = new DeferredResult<>(
+                wait != null ? TimeUnit.SECONDS.toMillis(Math.clamp(wait, 1, MAX_JOB_WAIT_SECONDS)) : null);
+        
+        if (user == null) {
+            result.setResult(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+            return result;
+        }
+        
+        FilmJobService.Job job;
+        try {
+            job = filmJobService.getJob(jobId, user.getLibraryId()).orElse(null);
+        } catch (IllegalArgumentException e) {
+            job = null;
+        }
+        if (job == null) {
+            result.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+            return result;
+        }
+        
+        FilmJobService.Job found = job;
+        if (wait == null || job.completion().isDone()) {
+            result.setResult(ResponseEntity.ok(job.toDto()));
+        } else {
+            result.onTimeout(() -> result.setResult(ResponseEntity.ok(found.toDto())));
+            job.completion().thenAccept(completed -> result.setResult(ResponseEntity.ok(completed.toDto())));
+        }
+        return result;
+    }
+
+    /**
+     * Adds a list of films in one call, each item is reported as CREATED, DUPLICATE or FAILED.
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<FilmDTO.BulkResponse> addFilms(
+            @RequestBody List<FilmDTO.Request> requests,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            FilmDTO.BulkResponse response = filmImportService.addFilms(requests, user.getLibraryId());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+    }
+
+    /**
+     * Imports a CSV or JSON file of films (tmdb_id or title per line), the report is streamed back as NDJSON:
+     * one line per duplicate or error, and progress lines with the counts.
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public void importFilms(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format,
+            @RequestParam(defaultValue = "en") String lang,
+            @RequestParam(defaultValue = "DVD") String support,
+            @CurrentUser SessionUser user,
+            HttpServletResponse response) throws IOException, InterruptedException {
+        if (user == null) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        
+        CollectionImportService.Format importFormat =
+                CollectionImportService.Format.fromParameter(format, file.getOriginalFilename());
+        
+        String libraryId;
+        try {
+            libraryId = user.getLibraryId();
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (InputStream input = file.getInputStream()) {
+            collectionImportService.importCollection(libraryId, importFormat, input, lang, support,
+                    response.getOutputStream());
+        } catch (RejectedExecutionException e) {
+            // Rejected before anything was written
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "5");
+        }
+    }
+
     @GetMapping("/{filmId}")
     public ResponseEntity<FilmDTO.Response> getFilm(@PathVariable Integer filmId) {
         try {
@@ -77,10 +211,8 @@ public class FilmController {
     public ResponseEntity<FilmDTO.Response> updateFilm(
             @PathVariable Integer filmId,
             @Valid @RequestBody FilmDTO.Request request,
-            HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
-        
-        if (userId == null) {
+            @CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
@@ -95,10 +227,8 @@ public class FilmController {
     @DeleteMapping("/{filmId}")
     public ResponseEntity<Void> deleteFilm(
             @PathVariable Integer filmId,
-            HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
-        
-        if (userId == null) {
+            @CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
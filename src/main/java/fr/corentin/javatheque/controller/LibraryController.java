@@ -1,13 +1,23 @@
 package fr.corentin.javatheque.controller;
 
 import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.service.LibraryCursor;
+import fr.corentin.javatheque.service.LibraryExportService;
+import fr.corentin.javatheque.service.LibraryResponseCache;
 import fr.corentin.javatheque.service.LibraryService;
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -15,42 +25,290 @@ import java.util.List;
 @RequiredArgsConstructor
 public class LibraryController {
     
+    /**
+     * Library reads may be kept by the browser only, and must be revalidated with their ETag before reuse.
+     */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+    private static final String GZIP_ETAG_SUFFIX = "-gzip\"";
+    
     private final LibraryService libraryService;
+    private final LibraryExportService libraryExportService;
 
+    /**
+     * Whole library, tagged with the library version: If-None-Match answers 304 without loading any film.
+     * The body comes serialized from LibraryResponseCache, gzipped when the client accepts it.
+     */
     @GetMapping
-    public ResponseEntity<List<FilmDTO.Response>> getLibrary(HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
-        
-        if (userId == null) {
+    public ResponseEntity<byte[]> getLibrary(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
         try {
-            List<FilmDTO.Response> films = libraryService.getUserLibraryFilms(userId);
-            return ResponseEntity.ok(films);
+            String libraryId = user.getLibraryId();
+            String eTag = libraryService.getLibraryETag(libraryId);
+            String matched = matchingETag(ifNoneMatch, eTag);
+            if (matched != null) {
+                return notModified(matched);
+            }
+            // Tagged with the version the films were read at, not the one just checked
+            LibraryResponseCache.Body body = libraryService.getSerializedLibraryFilms(libraryId, eTag);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .cacheControl(REVALIDATE)
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            if (body.getGzip() != null && acceptsGzip(acceptEncoding)) {
+                return response.eTag(gzipETag(body.getETag()))
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .body(body.getGzip());
+            }
+            return response.eTag(body.getETag()).body(body.getJson());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
     }
 
+    /**
+     * Keyset paginated variant of the library listing, selected by the size parameter.
+     */
+    @GetMapping(params = "size")
+    public ResponseEntity<LibraryDTO.Page> getLibraryPage(
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "added") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @CurrentUser SessionUser user) {
+        return getPage(null, size, cursor, sort, direction, user);
+    }
+
     @GetMapping("/search")
     public ResponseEntity<List<FilmDTO.Response>> searchLibrary(
             @RequestParam(required = false) String search,
-            HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            // The search text is part of the URL, the library version is enough to tag the result
+            String libraryId = user.getLibraryId();
+            return libraryService.withLibraryETag(libraryId, eTag -> {
+                String matched = matchingETag(ifNoneMatch, eTag);
+                if (matched != null) {
+                    return notModified(matched);
+                }
+                List<FilmDTO.Response> films;
+                if (search == null || search.isEmpty() || "all".equalsIgnoreCase(search)) {
+                    films = libraryService.getLibraryFilms(libraryId);
+                } else {
+                    films = libraryService.searchLibraryFilms(libraryId, search);
+                }
+                return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(films);
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    @GetMapping(value = "/search", params = "size")
+    public ResponseEntity<LibraryDTO.Page> searchLibraryPage(
+            @RequestParam(required = false) String search,
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "added") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @CurrentUser SessionUser user) {
+        String title = search == null || search.isEmpty() || "all".equalsIgnoreCase(search) ? null : search;
+        return getPage(title, size, cursor, sort, direction, user);
+    }
+
+    /**
+     * Collection dashboard (films per decade and support, top directors and actors, average rate), read from
+     * aggregates kept up to date by every film change. Tagged with the library version like the listings.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<LibraryDTO.Stats> getLibraryStats(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
         
-        if (userId == null) {
+        try {
+            String libraryId = user.getLibraryId();
+            return libraryService.withLibraryETag(libraryId, eTag -> {
+                String matched = matchingETag(ifNoneMatch, eTag);
+                if (matched != null) {
+                    return notModified(matched);
+                }
+                LibraryDTO.Stats stats = libraryService.getLibraryStats(libraryId);
+                return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(stats);
+            });
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Recomputes the dashboard aggregates from the films of the library, should they ever drift.
+     */
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<LibraryDTO.Stats> rebuildLibraryStats(@CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            return ResponseEntity.ok(libraryService.rebuildLibraryStats(user.getLibraryId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Delta sync: films added or updated and ids of the films deleted since the token of the previous sync, with
+     * the token to send next time. Without a token, or with one older than the change journal, the whole library
+     * comes back with resync set.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<LibraryDTO.Changes> getLibraryChanges(
+            @RequestParam(required = false) String since,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        try {
+            LibraryDTO.Changes changes = libraryService.getLibraryChanges(user.getLibraryId(), since);
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(changes);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Films matching the facet filters (one page, ordered by title) with the counts of every facet.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<LibraryDTO.FacetResult> getLibraryFacets(
+            LibraryDTO.FacetQuery query,
+            @CurrentUser SessionUser user) {
+        if (user == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
         
         try {
-            List<FilmDTO.Response> films;
-            if (search == null || search.isEmpty() || "all".equalsIgnoreCase(search)) {
-                films = libraryService.getUserLibraryFilms(userId);
-            } else {
-                films = libraryService.searchUserLibraryFilms(userId, search);
+            LibraryDTO.FacetResult result = libraryService.getLibraryFacets(user.getLibraryId(), query);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    /**
+     * Streams the whole library as NDJSON (one film per line) or as a JSON array.
+     */
+    @GetMapping("/export")
+    public void exportLibrary(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @CurrentUser SessionUser user,
+            HttpServletResponse response) throws IOException {
+        if (user == null) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        
+        LibraryExportService.Format exportFormat = LibraryExportService.Format.fromParameter(format);
+        
+        String libraryId;
+        try {
+            libraryId = user.getLibraryId();
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        
+        response.setContentType(exportFormat.getContentType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"javatheque-library." + exportFormat.getExtension() + "\"");
+        libraryExportService.exportLibrary(libraryId, exportFormat, response.getOutputStream());
+    }
+
+    /**
+     * If-None-Match uses the weak comparison (W/"x" matches "x"), and the tag of the gzipped representation
+     * matches the identity one: both stand for the same library version.
+     * Returns the tag that matched, for the 304 to confirm the representation the client holds, or null.
+     */
+    private static String matchingETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String gzipETag = gzipETag(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
             }
-            return ResponseEntity.ok(films);
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return eTag;
+            }
+            if (tag.equals(gzipETag)) {
+                return gzipETag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A strong ETag identifies the bytes sent, so the gzipped body gets its own.
+     */
+    private static String gzipETag(String eTag) {
+        return eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parameters.length; i++) {
+                    // q=0 means not acceptable
+                    if (parameters[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+    }
+
+    private ResponseEntity<LibraryDTO.Page> getPage(
+            String title, int size, String cursor, String sort, String direction, SessionUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        // Invalid cursor or sort parameters are client errors handled by GlobalExceptionHandler
+        LibraryCursor libraryCursor = cursor != null
+                ? LibraryCursor.decode(cursor)
+                : LibraryCursor.first(LibraryCursor.SortKey.fromParameter(sort), Sort.Direction.fromString(direction));
+        
+        try {
+            LibraryDTO.Page page = libraryService.getLibraryPage(user.getLibraryId(), title, libraryCursor, size);
+            return ResponseEntity.ok(page);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -0,0 +1,146 @@
+package fr.corentin.javatheque.controller;
+
+import fr.corentin.javatheque.service.PosterService;
+import fr.corentin.javatheque.service.TMDBUnavailableException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Posters served from the local cache (see PosterService). Files are sent without copying them through the heap:
+ * with Tomcat sendfile when the connector supports it, FileChannel.transferTo otherwise.
+ */
+@RestController
+@RequestMapping("/api/posters")
+@RequiredArgsConstructor
+public class PosterController {
+
+    /**
+     * A poster file never changes once TMDB published it, its name changes instead.
+     */
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+            .getHeaderValue();
+    /**
+     * The source size standing in for a thumbnail not generated yet, the thumbnail should be asked again soon.
+     */
+    private static final String SHORT_LIVED = CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic()
+            .getHeaderValue();
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final PosterService posterService;
+
+    /**
+     * Poster at a TMDB size (w185, w342, w500 or the source size), fetched from TMDB on first use.
+     * Answers a single byte range when asked.
+     */
+    @RequestMapping(value = "/{size}/{fileName:.+}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void getPoster(@PathVariable String size, @PathVariable String fileName,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<PosterService.Poster> poster;
+        try {
+            poster = posterService.getPoster(size, fileName);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        } catch (TMDBUnavailableException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "30");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (poster.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Path file = poster.get().getFile();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            long start = 0;
+            long end = length;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null) {
+                Matcher matcher = RANGE.matcher(range.trim());
+                if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                    if (matcher.group(1).isEmpty()) {
+                        // Suffix range: the last n bytes
+                        start = Math.max(0, length - parseLength(matcher.group(2)));
+                    } else {
+                        start = parseLength(matcher.group(1));
+                        if (!matcher.group(2).isEmpty()) {
+                            // Clamped before the increment, a last byte past the end of the file means up to its end
+                            end = Math.min(length - 1, parseLength(matcher.group(2))) + 1;
+                        }
+                    }
+                    if (start >= end) {
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                        response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        return;
+                    }
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+                }
+            }
+
+            response.setContentType(file.getFileName().toString().endsWith(".png")
+                    ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE);
+            response.setContentLengthLong(end - start);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setHeader(HttpHeaders.CACHE_CONTROL, poster.get().isExact() ? IMMUTABLE : SHORT_LIVED);
+            if ("HEAD".equals(request.getMethod())) {
+                return;
+            }
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Tomcat writes the file itself once the request returns, end exclusive
+                request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end);
+                return;
+            }
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            out.flush();
+        } catch (NoSuchFileException e) {
+            // Evicted between the lookup and the read
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        }
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+}
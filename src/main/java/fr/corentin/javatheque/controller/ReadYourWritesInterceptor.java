@@ -0,0 +1,79 @@
+package fr.corentin.javatheque.controller;
+
+import fr.corentin.javatheque.service.ReadYourWritesGuard;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.util.WebUtils;
+
+import java.util.Set;
+
+/**
+ * Sends the reads of a request to the primary database when its user wrote recently (see ReadYourWritesGuard).
+ * The user comes from the token authenticated request or the session, without any lookup.
+ * Writing requests also set a cookie that lives for the read-your-writes window, so that the next reads of the
+ * writer stay on the primary whichever instance serves them.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    static final String RECENT_WRITE_COOKIE = "JAVATHEQUE_RECENT_WRITE";
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReadYourWritesGuard readYourWritesGuard;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Never inherit the decision of a previous request served by this thread
+        ReadYourWritesGuard.reset();
+        if (!SAFE_METHODS.contains(request.getMethod())) {
+            response.addHeader(HttpHeaders.SET_COOKIE, recentWriteCookie().toString());
+        } else if (WebUtils.getCookie(request, RECENT_WRITE_COOKIE) != null) {
+            readYourWritesGuard.requirePrimary();
+            return true;
+        }
+
+        if (request.getAttribute(SessionUser.REQUEST_ATTRIBUTE) instanceof SessionUser user) {
+            readYourWritesGuard.requirePrimaryIfRecentlyWritten(user.getUserId(),
+                    user.hasLibrary() ? user.getLibraryId() : null);
+            return true;
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null && session.getAttribute(SessionUser.USER_ID) instanceof String userId) {
+            readYourWritesGuard.requirePrimaryIfRecentlyWritten(userId,
+                    (String) session.getAttribute(SessionUser.LIBRARY_ID));
+        }
+        return true;
+    }
+
+    /**
+     * The request goes on on another thread, afterCompletion will not run on this one.
+     */
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ReadYourWritesGuard.reset();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReadYourWritesGuard.reset();
+    }
+
+    private ResponseCookie recentWriteCookie() {
+        return ResponseCookie.from(RECENT_WRITE_COOKIE, "1")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(readYourWritesGuard.getWindow().plusMillis(999).toSeconds())
+                .build();
+    }
+
+}
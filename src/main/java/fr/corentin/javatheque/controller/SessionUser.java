@@ -0,0 +1,56 @@
+package fr.corentin.javatheque.controller;
+
+import fr.corentin.javatheque.dto.UserDTO;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Identity of the logged in user, resolved by CurrentUserArgumentResolver from the session or,
+ * with auth.mode=token, from the signed token verified by AuthTokenFilter.
+ * The library id is stored at login so requests do not look it up again.
+ */
+public final class SessionUser {
+
+    /**
+     * Request attribute holding the SessionUser of a request authenticated by token.
+     */
+    public static final String REQUEST_ATTRIBUTE = SessionUser.class.getName();
+    public static final String TOKEN_COOKIE = "JAVATHEQUE_TOKEN";
+
+    static final String USER_ID = "userId";
+    static final String LIBRARY_ID = "libraryId";
+
+    private final String userId;
+    private final String libraryId;
+
+    public SessionUser(String userId, String libraryId) {
+        this.userId = userId;
+        this.libraryId = libraryId;
+    }
+
+    /**
+     * Logs the user in on the session.
+     */
+    static void store(HttpSession session, UserDTO.Response user) {
+        session.setAttribute(USER_ID, user.getId());
+        session.setAttribute(LIBRARY_ID, user.getLibraryId());
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    boolean hasLibrary() {
+        return libraryId != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the user has no library
+     */
+    public String getLibraryId() {
+        if (libraryId == null) {
+            throw new IllegalArgumentException("Library not found for user");
+        }
+        return libraryId;
+    }
+
+}
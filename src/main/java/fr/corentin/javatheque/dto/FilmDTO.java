@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.List;
 
 public class FilmDTO {
@@ -61,6 +62,74 @@ public class FilmDTO {
         @Positive(message = "Page must be positive")
         private int page = 1;
     }
+
+    public enum BulkStatus {
+        CREATED, DUPLICATE, FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkItemResult {
+        private Integer tmdbId;
+        private BulkStatus status;
+        private String error;
+        private Response film;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkResponse {
+        private int created;
+        private int duplicates;
+        private int failed;
+        private List<BulkItemResult> results;
+    }
+
+    /**
+     * Outcome of a line of an imported file that was not added (duplicate or error).
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImportLine {
+        private int line;
+        private Integer tmdbId;
+        private String title;
+        private BulkStatus status;
+        private String error;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImportProgress {
+        private long processed;
+        private long created;
+        private long duplicates;
+        private long failed;
+        private boolean done;
+    }
+
+    public enum JobStatus {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * State of an asynchronous add-film job, film is set once it succeeded.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Job {
+        private String id;
+        private Integer tmdbId;
+        private JobStatus status;
+        private String error;
+        private Response film;
+        private Instant submittedAt;
+        private Instant completedAt;
+    }
     
 }
-
@@ -0,0 +1,89 @@
+package fr.corentin.javatheque.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+public class LibraryDTO {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Page {
+        private List<FilmDTO.Response> films;
+        private String next;
+    }
+
+    /**
+     * Facet filters, values of a same facet are OR-ed, facets are AND-ed.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FacetQuery {
+        private List<String> director;
+        private List<String> actor;
+        private List<String> support;
+        private List<String> lang;
+        private Integer yearFrom;
+        private Integer yearTo;
+        private Float rateMin;
+        private Float rateMax;
+        private int page = 0;
+        private int size = 50;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FacetCount {
+        private String value;
+        private int count;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FacetResult {
+        private int total;
+        private List<FilmDTO.Response> films;
+        private Map<String, List<FacetCount>> facets;
+    }
+
+    /**
+     * Collection dashboard, decades in chronological order, supports, directors and actors by film count.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Stats {
+        private int totalFilms;
+        private int ratedFilms;
+        /**
+         * Average rate of the rated films, null when none is rated.
+         */
+        private Double averageRate;
+        private List<FacetCount> decades;
+        private List<FacetCount> supports;
+        private List<FacetCount> topDirectors;
+        private List<FacetCount> topActors;
+    }
+
+    /**
+     * Films changed since a sync token: films added or updated, ids of the deleted ones, and the token of the next
+     * sync. With resync set, films holds the whole library and the client replaces its copy.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Changes {
+        private boolean resync;
+        private List<FilmDTO.Response> films;
+        private List<Integer> deleted;
+        private String token;
+    }
+    
+}
@@ -0,0 +1,53 @@
+package fr.corentin.javatheque.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Immutable subset of a TMDB movie (details and credits) kept in the tmdbMovies cache.
+ */
+@Value
+public class TMDBMovieDTO {
+
+    private static final int OBJECT_BYTES = 16;
+    private static final int REFERENCE_BYTES = 8;
+    private static final int STRING_BYTES = 40;
+
+    Integer id;
+    String title;
+    String overview;
+    String posterPath;
+    String releaseDate;
+    String director;
+    List<String> actors;
+
+    public TMDBMovieDTO(Integer id, String title, String overview, String posterPath, String releaseDate,
+                        String director, List<String> actors) {
+        this.id = id;
+        this.title = title;
+        this.overview = overview;
+        this.posterPath = posterPath;
+        this.releaseDate = releaseDate;
+        this.director = director;
+        this.actors = List.copyOf(actors);
+    }
+
+    /**
+     * Rough retained size, used as the cache weight.
+     */
+    public int estimatedBytes() {
+        int bytes = OBJECT_BYTES + 8 * REFERENCE_BYTES + OBJECT_BYTES
+                + sizeOf(title) + sizeOf(overview) + sizeOf(posterPath) + sizeOf(releaseDate) + sizeOf(director)
+                + OBJECT_BYTES + actors.size() * REFERENCE_BYTES;
+        for (String actor : actors) {
+            bytes += sizeOf(actor);
+        }
+        return bytes;
+    }
+
+    private static int sizeOf(String value) {
+        return value == null ? 0 : STRING_BYTES + 2 * value.length();
+    }
+
+}
@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -56,6 +58,7 @@ public class Film {
     private Person director;
     
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(name = "film_actors", joinColumns = @JoinColumn(name = "film_id"))
     @AttributeOverrides({
         @AttributeOverride(name = "firstname", column = @Column(name = "actor_firstname")),
@@ -63,9 +66,19 @@ public class Film {
     })
     private List<Person> actors = new ArrayList<>();
     
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "library_id", referencedColumnName = "id", insertable = false, updatable = false)
     private Library library;
     
+    @PrePersist
+    public void prePersist() {
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
+    }
+    
 }
 
@@ -23,6 +23,19 @@ public class Library {
     @Column(name = "owner_id", nullable = false, unique = true, length = 36)
     private String ownerId;
     
+    /**
+     * Incremented by LibraryRepository.incrementVersion on every film change, never written through the entity
+     * so that saving a stale Library cannot move it back.
+     */
+    @Column(name = "version", nullable = false, insertable = false, updatable = false)
+    private long version;
+    
+    /**
+     * Highest version whose changes may have been compacted out of the change journal (see LibraryChangeService).
+     */
+    @Column(name = "changes_floor", nullable = false, insertable = false, updatable = false)
+    private long changesFloor;
+    
     @OneToMany(mappedBy = "library", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Film> films = new ArrayList<>();
     
@@ -0,0 +1,49 @@
+package fr.corentin.javatheque.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A film added, updated or deleted in a library, journaled with the library version of the change.
+ * Written only by LibraryChangeService in the transaction of the film change, read through this entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Immutable
+@Table(name = "library_changes")
+public class LibraryChange {
+
+    public enum Type {
+        UPSERT,
+        DELETE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "library_id", nullable = false, length = 36)
+    private String libraryId;
+
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @Column(name = "film_id", nullable = false)
+    private Integer filmId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "change_type", nullable = false, length = 8)
+    private Type type;
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+
+}
@@ -0,0 +1,70 @@
+package fr.corentin.javatheque.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Number of films and sum of their rates for one value of a dimension of a library (a decade, a director...).
+ * Written only by LibraryStatsService with upserts, read through this entity.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Immutable
+@IdClass(LibraryStat.Key.class)
+@Table(name = "library_stats")
+public class LibraryStat {
+
+    public enum Dimension {
+        /**
+         * Whole library, a single row with an empty label.
+         */
+        TOTAL,
+        DECADE,
+        SUPPORT,
+        DIRECTOR,
+        ACTOR
+    }
+
+    @Id
+    @Column(name = "library_id", length = 36)
+    private String libraryId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dimension", length = 16)
+    private Dimension dimension;
+
+    @Id
+    @Column(name = "label")
+    private String label;
+
+    @Column(name = "film_count", nullable = false)
+    private int filmCount;
+
+    /**
+     * Sum of the rates of the rated films (rate above 0).
+     */
+    @Column(name = "rate_sum", nullable = false, precision = 14, scale = 2)
+    private BigDecimal rateSum;
+
+    @Column(name = "rate_count", nullable = false)
+    private int rateCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String libraryId;
+        private Dimension dimension;
+        private String label;
+    }
+
+}
@@ -1,24 +1,95 @@
 package fr.corentin.javatheque.repository;
 
 import fr.corentin.javatheque.model.Film;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface FilmRepository extends JpaRepository<Film, Integer> {
 
+    /**
+     * Id and title only, used to build in-memory views of a library.
+     */
+    interface TitleView {
+        Integer getId();
+        String getTitle();
+    }
+
+    /**
+     * Id and owning library, used to find which films of a batch are already registered.
+     */
+    interface LibraryView {
+        Integer getId();
+        String getLibraryId();
+    }
+
+    @EntityGraph(attributePaths = "actors")
     List<Film> findByLibraryId(String libraryId);
 
+    /**
+     * Keyset page of a library, actors are batch fetched for the whole page.
+     */
+    Window<Film> findByLibraryId(String libraryId, ScrollPosition position, Sort sort, Limit limit);
+
+    @EntityGraph(attributePaths = "actors")
     @Query("SELECT f FROM Film f WHERE f.libraryId = :libraryId AND LOWER(f.title) LIKE LOWER(CONCAT('%', :title, '%'))")
     List<Film> findByLibraryIdAndTitleContainingIgnoreCase(@Param("libraryId") String libraryId, @Param("title") String title);
 
-    void deleteByLibraryId(String libraryId);
+    /**
+     * Keyset page of the films of a library whose title contains the given text.
+     */
+    Window<Film> findByLibraryIdAndTitleContainingIgnoreCase(String libraryId, String title, ScrollPosition position, Sort sort, Limit limit);
+
+    /**
+     * Streams a whole library with its actors, ordered by id so that the rows of a film are contiguous.
+     * Must be consumed inside a transaction; the JDBC fetch size keeps the driver from buffering the result.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Film f LEFT JOIN FETCH f.actors WHERE f.libraryId = :libraryId ORDER BY f.id")
+    Stream<Film> streamByLibraryId(@Param("libraryId") String libraryId);
+
+    List<TitleView> findTitlesByLibraryId(String libraryId);
 
-    boolean existsByIdAndLibraryId(Integer id, String libraryId);
+    /**
+     * Facet columns of every film of a library: id, title, director firstname, director lastname,
+     * year, support, lang, rate.
+     */
+    @Query("SELECT f.id, f.title, f.director.firstname, f.director.lastname, f.year, f.support, f.lang, f.rate " +
+            "FROM Film f WHERE f.libraryId = :libraryId")
+    List<Object[]> findFacetRowsByLibraryId(@Param("libraryId") String libraryId);
+
+    /**
+     * Actors of every film of a library: film id, actor firstname, actor lastname.
+     */
+    @Query("SELECT f.id, a.firstname, a.lastname FROM Film f JOIN f.actors a WHERE f.libraryId = :libraryId")
+    List<Object[]> findActorRowsByLibraryId(@Param("libraryId") String libraryId);
+
+    /**
+     * Films of the library among the ids: ids come from in-memory indexes and journals that may be stale,
+     * a film since moved to or deleted from another library must not be returned.
+     */
+    @EntityGraph(attributePaths = "actors")
+    List<Film> findByLibraryIdAndIdIn(String libraryId, Collection<Integer> ids);
+
+    List<LibraryView> findLibraryIdsByIdIn(Collection<Integer> ids);
+
+    void deleteByLibraryId(String libraryId);
     
 }
-
@@ -0,0 +1,40 @@
+package fr.corentin.javatheque.repository;
+
+import fr.corentin.javatheque.model.LibraryChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LibraryChangeRepository extends JpaRepository<LibraryChange, Long> {
+
+    /**
+     * Changes of a library with a version in (since, until], in the order they were made.
+     */
+    @Query("SELECT c FROM LibraryChange c WHERE c.libraryId = :libraryId AND c.version > :since "
+            + "AND c.version <= :until ORDER BY c.version, c.id")
+    List<LibraryChange> findChanges(@Param("libraryId") String libraryId, @Param("since") long since,
+                                    @Param("until") long until);
+
+    /**
+     * Raises the changes floor of the libraries that have changes older than the cutoff to their latest such version.
+     * Never lowers it: with several instances changed_at is not monotonic with the version (clock skew), and a floor
+     * going down would let a token be answered from a journal missing the changes compacted before.
+     */
+    @Modifying
+    @Query(value = "UPDATE libraries SET changes_floor = GREATEST(changes_floor, (SELECT MAX(c.version) "
+            + "FROM library_changes c WHERE c.library_id = libraries.id AND c.changed_at < :cutoff)) "
+            + "WHERE id IN (SELECT c.library_id FROM library_changes c WHERE c.changed_at < :cutoff)",
+            nativeQuery = true)
+    int raiseChangesFloors(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query(value = "DELETE FROM library_changes WHERE changed_at < :cutoff", nativeQuery = true)
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff);
+
+}
@@ -2,6 +2,9 @@ package fr.corentin.javatheque.repository;
 
 import fr.corentin.javatheque.model.Library;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -14,6 +17,30 @@ public interface LibraryRepository extends JpaRepository<Library, String> {
     void deleteByOwnerId(String ownerId);
 
     boolean existsByOwnerId(String ownerId);
+
+    /**
+     * Version of the library contents, read without loading the library.
+     */
+    @Query("SELECT l.version FROM Library l WHERE l.id = :libraryId")
+    Optional<Long> findVersionById(@Param("libraryId") String libraryId);
+
+    /**
+     * Version of the library contents and floor of its change journal, read together by delta syncs.
+     */
+    @Query("SELECT l.version AS version, l.changesFloor AS changesFloor FROM Library l WHERE l.id = :libraryId")
+    Optional<SyncState> findSyncStateById(@Param("libraryId") String libraryId);
+
+    /**
+     * Bumps the version of the library contents. Native so it also applies to the column the entity never writes.
+     */
+    @Modifying
+    @Query(value = "UPDATE libraries SET version = version + 1 WHERE id = :libraryId", nativeQuery = true)
+    int incrementVersion(@Param("libraryId") String libraryId);
+
+    interface SyncState {
+        long getVersion();
+        long getChangesFloor();
+    }
     
 }
 
@@ -0,0 +1,29 @@
+package fr.corentin.javatheque.repository;
+
+import fr.corentin.javatheque.model.LibraryStat;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LibraryStatRepository extends JpaRepository<LibraryStat, LibraryStat.Key> {
+
+    List<LibraryStat> findByLibraryIdAndDimensionIn(String libraryId, Collection<LibraryStat.Dimension> dimensions);
+
+    /**
+     * Most frequent values of a dimension, read in index order (library_id, dimension, film_count).
+     */
+    List<LibraryStat> findByLibraryIdAndDimensionOrderByFilmCountDescLabelAsc(
+            String libraryId, LibraryStat.Dimension dimension, Limit limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM library_stats WHERE library_id = :libraryId", nativeQuery = true)
+    int deleteByLibraryId(@Param("libraryId") String libraryId);
+
+}
@@ -3,6 +3,7 @@ package fr.corentin.javatheque.repository;
 import fr.corentin.javatheque.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -10,6 +11,10 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, String> {
 
+    /**
+     * Read-only so logins are served by a replica when there is one.
+     */
+    @Transactional(readOnly = true)
     Optional<User> findByEmail(String email);
 
     boolean existsByEmail(String email);
@@ -0,0 +1,168 @@
+package fr.corentin.javatheque.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stateless authentication tokens, used when auth.mode=token instead of the server-side session.
+ * A token carries the user id, the library id and an expiry, signed with HMAC-SHA256:
+ * keyId.payload.signature, payload and signature base64url encoded. Any instance holding the keys can
+ * verify it without a storage lookup.
+ * Keys are configured as id:base64-secret, the first one signs and all of them verify, so a key is rotated
+ * by prepending the new one and dropping the old one once the tokens it signed have expired.
+ */
+@Service
+public class AuthTokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    private final String signingKeyId;
+
+    @Autowired
+    public AuthTokenService(
+            @Value("${auth.mode:session}") String mode,
+            @Value("${auth.token.keys:}") List<String> keys,
+            @Value("${auth.token.ttl:12h}") Duration ttl) {
+        this(parseMode(mode), keys, ttl, Clock.systemUTC());
+    }
+
+    AuthTokenService(boolean enabled, List<String> keys, Duration ttl, Clock clock) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.clock = clock;
+        for (String key : keys) {
+            if (!key.isBlank()) {
+                addKey(key.trim());
+            }
+        }
+        if (enabled && this.keys.isEmpty()) {
+            throw new IllegalStateException("auth.mode=token requires at least one key in auth.token.keys");
+        }
+        this.signingKeyId = this.keys.isEmpty() ? null : this.keys.keySet().iterator().next();
+    }
+
+    /**
+     * True when requests are authenticated by token rather than by session.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Token for the user, signed with the current key and valid for auth.token.ttl.
+     */
+    public String issue(String userId, String libraryId) {
+        if (signingKeyId == null) {
+            throw new IllegalStateException("No token signing key configured");
+        }
+        long expiresAt = clock.instant().plus(ttl).getEpochSecond();
+        String payload = userId + '\n' + (libraryId != null ? libraryId : "") + '\n' + expiresAt;
+        String signed = signingKeyId + '.' + ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        return signed + '.' + ENCODER.encodeToString(sign(keys.get(signingKeyId), signed));
+    }
+
+    /**
+     * Claims of the token, empty when it is malformed, signed with an unknown key, tampered with or expired.
+     */
+    public Optional<Claims> verify(String token) {
+        int payloadStart = token.indexOf('.');
+        int signatureStart = token.lastIndexOf('.');
+        if (payloadStart <= 0 || signatureStart == payloadStart) {
+            return Optional.empty();
+        }
+        SecretKeySpec key = keys.get(token.substring(0, payloadStart));
+        if (key == null) {
+            return Optional.empty();
+        }
+        try {
+            String signed = token.substring(0, signatureStart);
+            byte[] signature = DECODER.decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, sign(key, signed))) {
+                return Optional.empty();
+            }
+            String payload = new String(DECODER.decode(signed.substring(payloadStart + 1)), StandardCharsets.UTF_8);
+            String[] fields = payload.split("\n", -1);
+            if (fields.length != 3 || fields[0].isEmpty()) {
+                return Optional.empty();
+            }
+            Instant expiresAt = Instant.ofEpochSecond(Long.parseLong(fields[2]));
+            if (!clock.instant().isBefore(expiresAt)) {
+                return Optional.empty();
+            }
+            return Optional.of(new Claims(fields[0], fields[1].isEmpty() ? null : fields[1], expiresAt));
+        } catch (IllegalArgumentException e) {
+            // Bad base64 or expiry
+            return Optional.empty();
+        }
+    }
+
+    private void addKey(String key) {
+        int separator = key.indexOf(':');
+        if (separator <= 0 || key.substring(0, separator).contains(".")) {
+            throw new IllegalStateException("auth.token.keys entries must be id:base64-secret, the id without dots");
+        }
+        byte[] secret = Base64.getDecoder().decode(key.substring(separator + 1));
+        if (secret.length < MIN_KEY_BYTES) {
+            throw new IllegalStateException("Token key " + key.substring(0, separator) + " must be at least "
+                    + MIN_KEY_BYTES + " bytes");
+        }
+        keys.put(key.substring(0, separator), new SecretKeySpec(secret, ALGORITHM));
+    }
+
+    private static byte[] sign(SecretKeySpec key, String data) {
+        try {
+            // Mac instances are not thread safe and cheap to create
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign token", e);
+        }
+    }
+
+    private static boolean parseMode(String mode) {
+        return switch (mode.trim().toLowerCase(Locale.ROOT)) {
+            case "session" -> false;
+            case "token" -> true;
+            default -> throw new IllegalStateException("auth.mode must be session or token, not " + mode);
+        };
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Claims {
+        private final String userId;
+        private final String libraryId;
+        private final Instant expiresAt;
+    }
+
+}
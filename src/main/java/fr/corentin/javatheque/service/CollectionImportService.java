@@ -0,0 +1,592 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.repository.FilmRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Imports a CSV or JSON file of films into a library as a pipeline:
+ * parse → resolve the TMDB id from the title → check for duplicates → hydrate from TMDB → batch insert.
+ * Stages are connected by bounded queues, so a stage blocks when the next one falls behind and memory
+ * does not depend on the size of the file. Duplicates and per-line errors are written to the output as
+ * NDJSON, along with a progress line after each inserted batch and a final one with done=true.
+ * At most film.import.max-concurrent imports run at once, on a pool sized for them, further ones are rejected.
+ */
+@Slf4j
+@Service
+public class CollectionImportService {
+
+    private static final ImportItem END = new ImportItem(0);
+
+    private final FilmService filmService;
+    private final FilmRepository filmRepository;
+    private final TMDBService tmdbService;
+    private final Validator validator;
+    private final int queueCapacity;
+    private final int resolveWorkers;
+    private final int hydrateWorkers;
+    private final Semaphore imports;
+    private final ExecutorService executor;
+    private final Gson gson = new Gson();
+
+    public CollectionImportService(
+            FilmService filmService,
+            FilmRepository filmRepository,
+            TMDBService tmdbService,
+            Validator validator,
+            @Value("${film.import.queue-capacity:256}") int queueCapacity,
+            @Value("${film.import.resolve-workers:4}") int resolveWorkers,
+            @Value("${film.import.parallelism:8}") int hydrateWorkers,
+            @Value("${film.import.max-concurrent:2}") int maxConcurrent) {
+        this.filmService = filmService;
+        this.filmRepository = filmRepository;
+        this.tmdbService = tmdbService;
+        this.validator = validator;
+        this.queueCapacity = queueCapacity;
+        this.resolveWorkers = resolveWorkers;
+        this.hydrateWorkers = hydrateWorkers;
+        this.imports = new Semaphore(maxConcurrent);
+        // Every stage task of an import blocks on its queues for the whole import: one thread per task
+        // (parser, duplicate check and the workers) for each import allowed to run
+        int threadsPerImport = 2 + resolveWorkers + hydrateWorkers;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrent * threadsPerImport, runnable -> {
+            Thread thread = new Thread(runnable, "collection-import-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public enum Format {
+        CSV, JSON;
+
+        /**
+         * Format from the request parameter, or from the file name when no parameter is given.
+         */
+        public static Format fromParameter(String value, String filename) {
+            if (value == null || value.isBlank()) {
+                return filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".json") ? JSON : CSV;
+            }
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown import format: " + value);
+            }
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException when film.import.max-concurrent imports are already running
+     */
+    public FilmDTO.ImportProgress importCollection(String libraryId, Format format, InputStream input,
+                                                   String lang, String support, OutputStream output)
+            throws IOException, InterruptedException {
+        if (!imports.tryAcquire()) {
+            throw new RejectedExecutionException("Too many imports in progress");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        BlockingQueue<ImportItem> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ImportItem> resolved = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ImportItem> checked = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ImportItem> hydrated = new ArrayBlockingQueue<>(queueCapacity);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            tasks.add(executor.submit(() -> parse(format, input, lang, support, parsed)));
+            tasks.addAll(stage(parsed, resolved, resolveWorkers, this::resolve));
+            tasks.add(executor.submit(() -> check(resolved, checked, libraryId)));
+            tasks.addAll(stage(checked, hydrated, hydrateWorkers, item -> hydrate(item, libraryId, seen)));
+            return persist(hydrated, libraryId, writer);
+        } finally {
+            // Stops the other stages when the client went away or the persistence failed
+            tasks.forEach(task -> task.cancel(true));
+            imports.release();
+        }
+    }
+
+    private Void parse(Format format, InputStream input, String lang, String support,
+                       BlockingQueue<ImportItem> out) throws InterruptedException {
+        int[] line = {0};
+        boolean cancelled = false;
+        try {
+            try {
+                if (format == Format.JSON) {
+                    parseJson(input, lang, support, line, out);
+                } else {
+                    parseCsv(input, lang, support, line, out);
+                }
+            } catch (IOException | RuntimeException e) {
+                ImportItem item = new ImportItem(line[0] + 1);
+                item.fail("Malformed file: " + e.getMessage());
+                out.put(item);
+            }
+        } catch (InterruptedException e) {
+            // Cancelled: nothing consumes the queue any more, putting the end marker could block forever
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!cancelled) {
+                out.put(END);
+            }
+        }
+        return null;
+    }
+
+    private void parseCsv(InputStream input, String lang, String support, int[] line,
+                          BlockingQueue<ImportItem> out) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            return;
+        }
+        line[0] = 1;
+        String cleanHeader = headerLine.replace("\uFEFF", "");
+        // Spreadsheets exported with a comma decimal separator use semicolons between columns
+        char separator = cleanHeader.indexOf(';') >= 0 && cleanHeader.indexOf(',') < 0 ? ';' : ',';
+        List<String> header = parseCsvLine(cleanHeader, separator).stream()
+                .map(CollectionImportService::column)
+                .toList();
+
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line[0]++;
+            if (text.isBlank()) {
+                continue;
+            }
+            List<String> values = parseCsvLine(text, separator);
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                row.put(header.get(i), values.get(i));
+            }
+            out.put(toItem(line[0], row, lang, support));
+        }
+    }
+
+    private void parseJson(InputStream input, String lang, String support, int[] line,
+                           BlockingQueue<ImportItem> out) throws IOException, InterruptedException {
+        JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        reader.beginArray();
+        while (reader.hasNext()) {
+            line[0]++;
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                ImportItem item = new ImportItem(line[0]);
+                item.fail("Item is not an object");
+                out.put(item);
+                continue;
+            }
+            JsonObject object = gson.fromJson(reader, JsonObject.class);
+            Map<String, String> row = new HashMap<>();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                if (!entry.getValue().isJsonNull() && entry.getValue().isJsonPrimitive()) {
+                    row.put(column(entry.getKey()), entry.getValue().getAsString());
+                }
+            }
+            out.put(toItem(line[0], row, lang, support));
+        }
+        reader.endArray();
+    }
+
+    private ImportItem toItem(int line, Map<String, String> row, String lang, String support) {
+        ImportItem item = new ImportItem(line);
+        item.title = blankToNull(row.get("title"));
+        item.year = blankToNull(row.get("year"));
+        String tmdbId = blankToNull(row.getOrDefault("tmdbid", row.get("id")));
+        String rate = blankToNull(row.get("rate"));
+        item.request = new FilmDTO.Request(null,
+                Objects.requireNonNullElse(blankToNull(row.get("lang")), lang),
+                Objects.requireNonNullElse(blankToNull(row.get("support")), support),
+                null,
+                blankToNull(row.get("opinion")));
+        try {
+            if (tmdbId != null) {
+                item.request.setTmdbId(Integer.valueOf(tmdbId));
+            }
+            if (rate != null) {
+                item.request.setRate(Float.valueOf(rate.replace(',', '.')));
+            }
+        } catch (NumberFormatException e) {
+            item.fail("Invalid number: " + e.getMessage());
+            return item;
+        }
+        if (tmdbId == null && item.title == null) {
+            item.fail("A tmdb_id or a title is required");
+        }
+        return item;
+    }
+
+    /**
+     * Runs a step on each item with a few workers. Items that already failed pass through untouched.
+     * The last worker to see the end of the input forwards it to the next stage.
+     */
+    private List<Future<?>> stage(BlockingQueue<ImportItem> in, BlockingQueue<ImportItem> out, int workers,
+                                  Consumer<ImportItem> step) {
+        AtomicInteger running = new AtomicInteger(workers);
+        List<Future<?>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            tasks.add(executor.submit((Callable<Void>) () -> {
+                try {
+                    ImportItem item;
+                    while ((item = in.take()) != END) {
+                        if (item.status == null) {
+                            try {
+                                step.accept(item);
+                            } catch (RuntimeException e) {
+                                log.debug("Import of line {} failed", item.line, e);
+                                item.fail(e.getMessage());
+                            }
+                        }
+                        out.put(item);
+                    }
+                    in.put(END);
+                    if (running.decrementAndGet() == 0) {
+                        out.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    // Cancelled: the end marker is not forwarded, the next stages are cancelled too
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+        }
+        return tasks;
+    }
+
+    private void resolve(ImportItem item) {
+        if (item.request.getTmdbId() != null) {
+            return;
+        }
+        String json = tmdbService.searchMovies(item.title, item.request.getLang(), 1);
+        if (json == null) {
+            item.fail("TMDB search failed");
+            return;
+        }
+        JsonObject response = gson.fromJson(json, JsonObject.class);
+        JsonArray results = response.has("results") ? response.getAsJsonArray("results") : new JsonArray();
+        JsonObject match = null;
+        for (JsonElement element : results) {
+            JsonObject result = element.getAsJsonObject();
+            if (item.year == null || releaseYear(result).equals(item.year)) {
+                match = result;
+                break;
+            }
+        }
+        if (match == null) {
+            item.fail("No TMDB match for this title");
+            return;
+        }
+        item.request.setTmdbId(match.get("id").getAsInt());
+    }
+
+    /**
+     * Single worker between resolve and hydrate: validates the requests and looks up the films already registered
+     * in one query for everything waiting in the queue (up to a batch), instead of one query per line.
+     */
+    private Void check(BlockingQueue<ImportItem> in, BlockingQueue<ImportItem> out, String libraryId) {
+        List<ImportItem> batch = new ArrayList<>(FilmService.PERSIST_BATCH_SIZE);
+        try {
+            boolean end = false;
+            while (!end) {
+                batch.add(in.take());
+                in.drainTo(batch, FilmService.PERSIST_BATCH_SIZE - 1);
+                // Nothing follows the end marker
+                end = batch.get(batch.size() - 1) == END;
+                if (end) {
+                    batch.remove(batch.size() - 1);
+                }
+                checkBatch(batch, libraryId);
+                for (ImportItem item : batch) {
+                    out.put(item);
+                }
+                batch.clear();
+            }
+            out.put(END);
+        } catch (InterruptedException e) {
+            // Cancelled: the end marker is not forwarded, the next stages are cancelled too
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private void checkBatch(List<ImportItem> batch, String libraryId) {
+        List<Integer> tmdbIds = new ArrayList<>(batch.size());
+        for (ImportItem item : batch) {
+            if (item.status != null) {
+                continue;
+            }
+            Set<ConstraintViolation<FilmDTO.Request>> violations = validator.validate(item.request);
+            if (!violations.isEmpty()) {
+                item.fail(violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(", ")));
+                continue;
+            }
+            tmdbIds.add(item.request.getTmdbId());
+        }
+        if (tmdbIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, String> registered;
+        try {
+            registered = filmRepository.findLibraryIdsByIdIn(tmdbIds).stream()
+                    .collect(Collectors.toMap(FilmRepository.LibraryView::getId, FilmRepository.LibraryView::getLibraryId));
+        } catch (RuntimeException e) {
+            log.debug("Duplicate check of {} imported films failed", tmdbIds.size(), e);
+            batch.stream().filter(item -> item.status == null).forEach(item -> item.fail(e.getMessage()));
+            return;
+        }
+        for (ImportItem item : batch) {
+            String owner = item.status == null ? registered.get(item.request.getTmdbId()) : null;
+            if (owner == null) {
+                continue;
+            }
+            if (libraryId.equals(owner)) {
+                duplicate(item);
+            } else {
+                // Films are keyed by their TMDB id, a film can only belong to one library
+                item.fail("Film already exists in another library");
+            }
+        }
+    }
+
+    private void hydrate(ImportItem item, String libraryId, Set<Integer> seen) {
+        Integer tmdbId = item.request.getTmdbId();
+        if (seen.contains(tmdbId)) {
+            duplicate(item);
+            return;
+        }
+
+        Film film;
+        try {
+            film = tmdbService.getFilmFromTMDB(tmdbId, item.request.getLang(), item.request.getSupport());
+        } catch (RuntimeException e) {
+            log.debug("Cannot hydrate film {} from TMDB", tmdbId, e);
+            item.fail("Film could not be fetched from TMDB");
+            return;
+        }
+        // Only a hydrated film counts as seen: after a TMDB failure, a later line with the same id gets its chance
+        if (!seen.add(tmdbId)) {
+            duplicate(item);
+            return;
+        }
+        film.setLibraryId(libraryId);
+        if (item.request.getRate() != null) {
+            film.setRate(item.request.getRate());
+        }
+        if (item.request.getOpinion() != null) {
+            film.setOpinion(item.request.getOpinion());
+        }
+        item.film = film;
+    }
+
+    private static void duplicate(ImportItem item) {
+        item.status = FilmDTO.BulkStatus.DUPLICATE;
+        item.error = "Film already exists in this library";
+    }
+
+    /**
+     * Last stage, on the calling thread: inserts films in batches and writes the report.
+     */
+    private FilmDTO.ImportProgress persist(BlockingQueue<ImportItem> in, String libraryId, Writer writer)
+            throws IOException, InterruptedException {
+        FilmDTO.ImportProgress progress = new FilmDTO.ImportProgress();
+        List<ImportItem> batch = new ArrayList<>(FilmService.PERSIST_BATCH_SIZE);
+        ImportItem item;
+        while ((item = in.take()) != END) {
+            if (item.status != null) {
+                progress.setProcessed(progress.getProcessed() + 1);
+                if (item.status == FilmDTO.BulkStatus.DUPLICATE) {
+                    progress.setDuplicates(progress.getDuplicates() + 1);
+                } else {
+                    progress.setFailed(progress.getFailed() + 1);
+                }
+                write(writer, item.toLine());
+                continue;
+            }
+            batch.add(item);
+            if (batch.size() == FilmService.PERSIST_BATCH_SIZE) {
+                flush(batch, libraryId, progress, writer);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch, libraryId, progress, writer);
+        }
+        progress.setDone(true);
+        write(writer, progress);
+        return progress;
+    }
+
+    private void flush(List<ImportItem> batch, String libraryId, FilmDTO.ImportProgress progress, Writer writer)
+            throws IOException {
+        try {
+            filmService.persistFilms(batch.stream().map(item -> item.film).toList());
+            progress.setCreated(progress.getCreated() + batch.size());
+        } catch (RuntimeException e) {
+            // Typically a film added concurrently since the duplicate check: the batch was rolled back, the films
+            // are saved again one at a time so only the offending lines are reported
+            log.debug("Cannot save a batch of {} imported films, saving them one at a time", batch.size(), e);
+            for (ImportItem item : batch) {
+                persistOne(item, libraryId);
+                if (item.status == null) {
+                    progress.setCreated(progress.getCreated() + 1);
+                    continue;
+                }
+                if (item.status == FilmDTO.BulkStatus.DUPLICATE) {
+                    progress.setDuplicates(progress.getDuplicates() + 1);
+                } else {
+                    progress.setFailed(progress.getFailed() + 1);
+                }
+                write(writer, item.toLine());
+            }
+        }
+        progress.setProcessed(progress.getProcessed() + batch.size());
+        batch.clear();
+        write(writer, progress);
+    }
+
+    private void persistOne(ImportItem item, String libraryId) {
+        // Fresh list: the rolled back insert left a collection wrapper of its closed session on the film
+        item.film.setActors(new ArrayList<>(item.film.getActors()));
+        try {
+            filmService.persistFilms(List.of(item.film));
+        } catch (DataIntegrityViolationException e) {
+            boolean inThisLibrary = filmRepository.findLibraryIdsByIdIn(List.of(item.film.getId())).stream()
+                    .anyMatch(view -> libraryId.equals(view.getLibraryId()));
+            if (inThisLibrary) {
+                duplicate(item);
+            } else {
+                item.fail("Film already exists in another library");
+            }
+        } catch (RuntimeException e) {
+            log.warn("Cannot save imported film {}", item.film.getId(), e);
+            item.fail("Film could not be saved");
+        }
+    }
+
+    private void write(Writer writer, Object value) throws IOException {
+        gson.toJson(value, writer);
+        writer.write('\n');
+        writer.flush();
+    }
+
+    /**
+     * Splits a CSV line on the separator, honouring double quotes and doubled quotes inside them.
+     */
+    static List<String> parseCsvLine(String line, char separator) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+
+    /**
+     * Column name without case nor separators, so "TMDB id", "tmdb_id" and "tmdbId" are the same column.
+     */
+    private static String column(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+
+    private static String releaseYear(JsonObject result) {
+        JsonElement releaseDate = result.get("release_date");
+        if (releaseDate == null || releaseDate.isJsonNull() || releaseDate.getAsString().length() < 4) {
+            return "";
+        }
+        return releaseDate.getAsString().substring(0, 4);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static final class ImportItem {
+        private final int line;
+        private String title;
+        private String year;
+        private FilmDTO.Request request;
+        private Film film;
+        private FilmDTO.BulkStatus status;
+        private String error;
+
+        ImportItem(int line) {
+            this.line = line;
+        }
+
+        void fail(String error) {
+            this.status = FilmDTO.BulkStatus.FAILED;
+            this.error = error;
+        }
+
+        FilmDTO.ImportLine toLine() {
+            return new FilmDTO.ImportLine(line, request != null ? request.getTmdbId() : null, title, status, error);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package fr.corentin.javatheque.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published by FilmService whenever a film of a library is added, updated or deleted.
+ * In-memory views of a library listen to it after commit to stay in sync with the database.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class FilmEvent {
+
+    public enum Type {
+        ADDED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+    private final String libraryId;
+    private final Integer filmId;
+    private final String title;
+
+}
@@ -0,0 +1,189 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.repository.FilmRepository;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Adds many films to a library at once: one duplicate check for the whole batch,
+ * TMDB hydration on a bounded pool and batched inserts.
+ */
+@Slf4j
+@Service
+public class FilmImportService {
+
+    private final FilmService filmService;
+    private final TMDBService tmdbService;
+    private final FilmRepository filmRepository;
+    private final Validator validator;
+    private final int maxFilms;
+    private final ExecutorService hydrationExecutor;
+
+    public FilmImportService(
+            FilmService filmService,
+            TMDBService tmdbService,
+            FilmRepository filmRepository,
+            Validator validator,
+            @Value("${film.import.parallelism:8}") int parallelism,
+            @Value("${film.import.max-films:1000}") int maxFilms) {
+        this.filmService = filmService;
+        this.tmdbService = tmdbService;
+        this.filmRepository = filmRepository;
+        this.validator = validator;
+        this.maxFilms = maxFilms;
+        AtomicInteger threads = new AtomicInteger();
+        this.hydrationExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "film-import-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hydrationExecutor.shutdownNow();
+    }
+
+    /**
+     * Adds the requested films to the library and reports the outcome of each request, in request order.
+     */
+    public FilmDTO.BulkResponse addFilms(List<FilmDTO.Request> requests, String libraryId) {
+        if (requests.size() > maxFilms) {
+            throw new IllegalArgumentException("At most " + maxFilms + " films can be added at once");
+        }
+
+        FilmDTO.BulkItemResult[] results = new FilmDTO.BulkItemResult[requests.size()];
+        List<Integer> pending = new ArrayList<>();
+
+        Set<Integer> requestedIds = requests.stream()
+                .map(FilmDTO.Request::getTmdbId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Integer, String> registered = requestedIds.isEmpty()
+                ? Map.of()
+                : filmRepository.findLibraryIdsByIdIn(requestedIds).stream()
+                        .collect(Collectors.toMap(FilmRepository.LibraryView::getId, FilmRepository.LibraryView::getLibraryId));
+
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            FilmDTO.Request request = requests.get(i);
+            Set<ConstraintViolation<FilmDTO.Request>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                results[i] = failed(request, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(", ")));
+            } else if (libraryId.equals(registered.get(request.getTmdbId())) || !seen.add(request.getTmdbId())) {
+                results[i] = duplicate(request);
+            } else if (registered.containsKey(request.getTmdbId())) {
+                // Films are keyed by their TMDB id, a film can only belong to one library
+                results[i] = failed(request, "Film already exists in another library");
+            } else {
+                pending.add(i);
+            }
+        }
+
+        List<CompletableFuture<Film>> hydrations = pending.stream()
+                .map(i -> CompletableFuture.supplyAsync(() -> hydrate(requests.get(i), libraryId), hydrationExecutor))
+                .toList();
+
+        List<Film> films = new ArrayList<>();
+        List<Integer> hydrated = new ArrayList<>();
+        for (int j = 0; j < pending.size(); j++) {
+            int i = pending.get(j);
+            try {
+                films.add(hydrations.get(j).join());
+                hydrated.add(i);
+            } catch (CompletionException e) {
+                log.debug("Cannot hydrate film {} from TMDB", requests.get(i).getTmdbId(), e.getCause());
+                results[i] = failed(requests.get(i), "Film could not be fetched from TMDB");
+            }
+        }
+
+        List<FilmDTO.Response> created = null;
+        try {
+            created = films.isEmpty() ? List.of() : filmService.persistFilms(films);
+        } catch (DataIntegrityViolationException e) {
+            // A film was added concurrently since the duplicate check and the whole batch was rolled back,
+            // the films are inserted again one at a time so only the conflicting ones are reported
+            log.debug("Bulk insert of {} films conflicted, inserting them one at a time", films.size(), e);
+        }
+        for (int j = 0; j < hydrated.size(); j++) {
+            int i = hydrated.get(j);
+            results[i] = created != null
+                    ? created(created.get(j))
+                    : persistOne(requests.get(i), films.get(j), libraryId);
+        }
+
+        List<FilmDTO.BulkItemResult> resultList = List.of(results);
+        return new FilmDTO.BulkResponse(
+                count(resultList, FilmDTO.BulkStatus.CREATED),
+                count(resultList, FilmDTO.BulkStatus.DUPLICATE),
+                count(resultList, FilmDTO.BulkStatus.FAILED),
+                resultList);
+    }
+
+    private Film hydrate(FilmDTO.Request request, String libraryId) {
+        Film film = tmdbService.getFilmFromTMDB(request.getTmdbId(), request.getLang(), request.getSupport());
+        film.setLibraryId(libraryId);
+        if (request.getRate() != null) {
+            film.setRate(request.getRate());
+        }
+        if (request.getOpinion() != null) {
+            film.setOpinion(request.getOpinion());
+        }
+        return film;
+    }
+
+    private FilmDTO.BulkItemResult persistOne(FilmDTO.Request request, Film film, String libraryId) {
+        // Fresh list: the rolled back insert left a collection wrapper of its closed session on the film
+        film.setActors(new ArrayList<>(film.getActors()));
+        try {
+            return created(filmService.persistFilms(List.of(film)).get(0));
+        } catch (DataIntegrityViolationException e) {
+            boolean inThisLibrary = filmRepository.findLibraryIdsByIdIn(List.of(film.getId())).stream()
+                    .anyMatch(view -> libraryId.equals(view.getLibraryId()));
+            return inThisLibrary
+                    ? duplicate(request)
+                    : failed(request, "Film already exists in another library");
+        }
+    }
+
+    private static FilmDTO.BulkItemResult created(FilmDTO.Response film) {
+        return new FilmDTO.BulkItemResult(film.getId(), FilmDTO.BulkStatus.CREATED, null, film);
+    }
+
+    private static FilmDTO.BulkItemResult duplicate(FilmDTO.Request request) {
+        return new FilmDTO.BulkItemResult(request.getTmdbId(), FilmDTO.BulkStatus.DUPLICATE,
+                "Film already exists in this library", null);
+    }
+
+    private FilmDTO.BulkItemResult failed(FilmDTO.Request request, String error) {
+        return new FilmDTO.BulkItemResult(request.getTmdbId(), FilmDTO.BulkStatus.FAILED, error, null);
+    }
+
+    private int count(List<FilmDTO.BulkItemResult> results, FilmDTO.BulkStatus status) {
+        return (int) results.stream().filter(result -> result.getStatus() == status).count();
+    }
+
+}
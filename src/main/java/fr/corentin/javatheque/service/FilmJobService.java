@@ -0,0 +1,210 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.corentin.javatheque.dto.FilmDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds films in the background so the request thread does not wait on TMDB.
+ * Jobs run on a bounded pool, a full queue rejects new jobs instead of piling them up.
+ * A job for a film that is already queued or running in the same library is not submitted twice,
+ * the caller gets the existing job. Queued and running jobs can always be read, bounded by the queue, while
+ * finished jobs are kept for a while (and up to film.jobs.max-finished of them) so clients can read their outcome.
+ */
+@Slf4j
+@Service
+public class FilmJobService {
+
+    private final FilmService filmService;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, Job> finishedJobs;
+    /**
+     * Queued and running jobs by id, and by library and film to deduplicate them.
+     */
+    private final Map<String, Job> activeJobs = new ConcurrentHashMap<>();
+    private final Map<String, Job> activeJobsByFilm = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilmJobService(
+            FilmService filmService,
+            @Value("${film.jobs.workers:4}") int workers,
+            @Value("${film.jobs.queue-capacity:100}") int queueCapacity,
+            @Value("${film.jobs.retention:1h}") Duration retention,
+            @Value("${film.jobs.max-finished:10000}") long maxFinished,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this(filmService, workers, queueCapacity, retention, maxFinished,
+                meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    FilmJobService(FilmService filmService, int workers, int queueCapacity, Duration retention, long maxFinished,
+                   MeterRegistry meterRegistry) {
+        this.filmService = filmService;
+        this.meterRegistry = meterRegistry;
+        this.finishedJobs = Caffeine.newBuilder()
+                .maximumSize(maxFinished)
+                .expireAfterWrite(retention)
+                .build();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "film-job-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        Gauge.builder("film.jobs.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Add-film jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("film.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Add-film jobs running")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a job adding the film to the library, or returns the pending job for the same film.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public Job submit(FilmDTO.Request request, String libraryId) {
+        String key = libraryId + ':' + request.getTmdbId();
+        Job job = new Job(UUID.randomUUID().toString(), libraryId, request.getTmdbId());
+        Job pending = activeJobsByFilm.putIfAbsent(key, job);
+        if (pending != null) {
+            count("deduplicated");
+            return pending;
+        }
+
+        activeJobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, request, key));
+        } catch (RejectedExecutionException e) {
+            job.complete(FilmDTO.JobStatus.FAILED, null, "Too many pending jobs");
+            activeJobs.remove(job.id);
+            activeJobsByFilm.remove(key, job);
+            count("rejected");
+            throw e;
+        }
+        count("accepted");
+        return job;
+    }
+
+    /**
+     * Job of the library, empty when it does not exist, expired or belongs to another library.
+     */
+    public Optional<Job> getJob(String jobId, String libraryId) {
+        Job active = activeJobs.get(jobId);
+        return Optional.ofNullable(active != null ? active : finishedJobs.getIfPresent(jobId))
+                .filter(job -> job.libraryId.equals(libraryId));
+    }
+
+    private void run(Job job, FilmDTO.Request request, String key) {
+        job.status = FilmDTO.JobStatus.RUNNING;
+        FilmDTO.Response film = null;
+        String error = null;
+        try {
+            film = filmService.addFilm(request, job.libraryId);
+        } catch (IllegalArgumentException | TMDBUnavailableException e) {
+            error = e.getMessage();
+        } catch (RuntimeException e) {
+            log.warn("Add-film job {} for film {} failed", job.id, job.tmdbId, e);
+            error = "Film could not be added";
+        }
+
+        // Bookkeeping first, so whoever is notified of the completion sees a consistent state. The job is
+        // readable as finished before it stops being active, a lookup never misses it
+        FilmDTO.JobStatus status = error == null ? FilmDTO.JobStatus.SUCCEEDED : FilmDTO.JobStatus.FAILED;
+        finishedJobs.put(job.id, job);
+        activeJobs.remove(job.id);
+        activeJobsByFilm.remove(key, job);
+        Timer.builder("film.jobs.latency")
+                .description("Time from submission to completion of add-film jobs")
+                .tag("status", status.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry)
+                .record(System.nanoTime() - job.submittedNanos, TimeUnit.NANOSECONDS);
+        job.complete(status, film, error);
+    }
+
+    private void count(String result) {
+        counters.computeIfAbsent(result, key -> Counter.builder("film.jobs.submitted")
+                        .tag("result", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    public static final class Job {
+
+        private final String id;
+        private final String libraryId;
+        private final Integer tmdbId;
+        private final Instant submittedAt = Instant.now();
+        private final long submittedNanos = System.nanoTime();
+        private final CompletableFuture<Job> completion = new CompletableFuture<>();
+        private volatile FilmDTO.JobStatus status = FilmDTO.JobStatus.QUEUED;
+        private volatile FilmDTO.Response film;
+        private volatile String error;
+        private volatile Instant completedAt;
+
+        private Job(String id, String libraryId, Integer tmdbId) {
+            this.id = id;
+            this.libraryId = libraryId;
+            this.tmdbId = tmdbId;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Completes with the job once it succeeded or failed.
+         */
+        public CompletableFuture<Job> completion() {
+            return completion;
+        }
+
+        public FilmDTO.Job toDto() {
+            return new FilmDTO.Job(id, tmdbId, status, error, film, submittedAt, completedAt);
+        }
+
+        private void complete(FilmDTO.JobStatus status, FilmDTO.Response film, String error) {
+            this.film = film;
+            this.error = error;
+            this.completedAt = Instant.now();
+            this.status = status;
+            completion.complete(this);
+        }
+    }
+
+}
@@ -1,29 +1,77 @@
 package fr.corentin.javatheque.service;
 
 import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
 import fr.corentin.javatheque.dto.PersonDto;
 import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.LibraryChange;
 import fr.corentin.javatheque.model.Person;
 import fr.corentin.javatheque.repository.FilmRepository;
-import jakarta.transaction.Transactional;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class FilmService {
     
+    /**
+     * Upper bound of a library page, matches the batch size used to fetch actors.
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+    
+    /**
+     * JDBC batch size of bulk inserts, films are flushed and detached by chunks of this size.
+     */
+    public static final int PERSIST_BATCH_SIZE = 50;
+    
     private final FilmRepository filmRepository;
+    private final LibraryRepository libraryRepository;
     private final TMDBService tmdbService;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LibraryStatsService libraryStatsService;
+    private final LibraryChangeService libraryChangeService;
 
+    /**
+     * Adds, updates and deletes bump the version of the library (see LibraryService.getLibraryETag), update its
+     * statistics (see LibraryStatsService) and journal the change for delta syncs (see LibraryChangeService)
+     * in the same transaction as the film change.
+     */
     @Transactional
     public FilmDTO.Response addFilm(FilmDTO.Request request, String libraryId) {
-        // Check if film already exists in this library
-        if (filmRepository.existsByIdAndLibraryId(request.getTmdbId(), libraryId)) {
-            throw new IllegalArgumentException("Film already exists in this library");
+        // Films are keyed by their TMDB id, a film can only belong to one library: saving one registered elsewhere
+        // would move it out of that library without its version, statistics nor change journal knowing
+        Optional<String> registeredIn = filmRepository.findLibraryIdsByIdIn(List.of(request.getTmdbId())).stream()
+                .map(FilmRepository.LibraryView::getLibraryId)
+                .findFirst();
+        if (registeredIn.isPresent()) {
+            throw new IllegalArgumentException(libraryId.equals(registeredIn.get())
+                    ? "Film already exists in this library"
+                    : "Film already exists in another library");
         }
         
         // Fetch film data from TMDB
@@ -41,25 +89,155 @@ public class FilmService {
             film.setOpinion(request.getOpinion());
         }
         
-        film = filmRepository.save(film);
+        // persist, not merge: a film added concurrently by another library fails on its key instead of being moved
+        entityManager.persist(film);
+        libraryRepository.incrementVersion(libraryId);
+        libraryStatsService.apply(new LibraryStatsService.Delta().add(film));
+        libraryChangeService.record(libraryId, LibraryChange.Type.UPSERT, List.of(film.getId()));
+        eventPublisher.publishEvent(new FilmEvent(FilmEvent.Type.ADDED, libraryId, film.getId(), film.getTitle()));
         
         return mapToFilmResponse(film);
     }
 
+    /**
+     * Inserts new films and their actors in JDBC batches.
+     * The persistence context is flushed and cleared every batch so memory stays flat on large imports.
+     *
+     * @throws DataIntegrityViolationException when one of the films was inserted since the caller checked for
+     * duplicates, nothing is inserted
+     */
+    @Transactional
+    public List<FilmDTO.Response> persistFilms(List<Film> films) {
+        Session session = entityManager.unwrap(Session.class);
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(PERSIST_BATCH_SIZE);
+        try {
+            List<FilmDTO.Response> responses = new ArrayList<>(films.size());
+            try {
+                for (int i = 0; i < films.size(); i++) {
+                    Film film = films.get(i);
+                    entityManager.persist(film);
+                    responses.add(mapToFilmResponse(film));
+                    if ((i + 1) % PERSIST_BATCH_SIZE == 0) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+                entityManager.flush();
+                entityManager.clear();
+            } catch (ConstraintViolationException e) {
+                // Services get no exception translation, callers tell the conflict apart from other failures
+                throw new DataIntegrityViolationException("Film already exists", e);
+            }
+            
+            films.stream()
+                    .collect(Collectors.groupingBy(Film::getLibraryId, LinkedHashMap::new,
+                            Collectors.mapping(Film::getId, Collectors.toList())))
+                    .forEach((libraryId, filmIds) -> {
+                        libraryRepository.incrementVersion(libraryId);
+                        libraryChangeService.record(libraryId, LibraryChange.Type.UPSERT, filmIds);
+                    });
+            LibraryStatsService.Delta delta = new LibraryStatsService.Delta();
+            films.forEach(delta::add);
+            libraryStatsService.apply(delta);
+            for (Film film : films) {
+                eventPublisher.publishEvent(new FilmEvent(FilmEvent.Type.ADDED, film.getLibraryId(), film.getId(), film.getTitle()));
+            }
+            return responses;
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+    }
+
+    @Transactional(readOnly = true)
     public List<FilmDTO.Response> getFilmsByLibrary(String libraryId) {
         List<Film> films = filmRepository.findByLibraryId(libraryId);
         return films.stream()
-                .map(this::mapToFilmResponse)
+                .map(FilmService::mapToFilmResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Films of the library and the library version, read in one transaction so both come from the same snapshot
+     * of the same database.
+     */
+    @Transactional(readOnly = true)
+    public VersionedFilms getVersionedFilmsByLibrary(String libraryId) {
+        long version = libraryRepository.findVersionById(libraryId)
+                .orElseThrow(() -> new IllegalArgumentException("Library not found"));
+        return new VersionedFilms(version, getFilmsByLibrary(libraryId));
+    }
+
+    @Transactional(readOnly = true)
     public List<FilmDTO.Response> searchFilmsInLibrary(String libraryId, String title) {
         List<Film> films = filmRepository.findByLibraryIdAndTitleContainingIgnoreCase(libraryId, title);
         return films.stream()
-                .map(this::mapToFilmResponse)
+                .map(FilmService::mapToFilmResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Keyset page of a library, optionally filtered on title.
+     * Seeks from the cursor position so the cost of a page does not depend on its depth.
+     */
+    @Transactional(readOnly = true)
+    public LibraryDTO.Page getFilmPage(String libraryId, String title, LibraryCursor cursor, int size) {
+        Limit limit = Limit.of(Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        Window<Film> window = title == null
+                ? filmRepository.findByLibraryId(libraryId, cursor.toScrollPosition(), cursor.toSort(), limit)
+                : filmRepository.findByLibraryIdAndTitleContainingIgnoreCase(
+                        libraryId, title, cursor.toScrollPosition(), cursor.toSort(), limit);
+        
+        List<FilmDTO.Response> films = window.stream()
+                .map(FilmService::mapToFilmResponse)
+                .collect(Collectors.toList());
+        
+        String next = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            KeysetScrollPosition lastPosition = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            next = cursor.next(lastPosition).encode();
+        }
+        return new LibraryDTO.Page(films, next);
+    }
+
+    /**
+     * Hands every film of a library to the consumer while the rows are read from the database.
+     * Each film is detached once consumed so the persistence context does not grow with the library.
+     */
+    @Transactional(readOnly = true)
+    public long forEachFilmInLibrary(String libraryId, Consumer<FilmDTO.Response> consumer) {
+        long count = 0;
+        try (Stream<Film> films = filmRepository.streamByLibraryId(libraryId)) {
+            Iterator<Film> iterator = films.iterator();
+            while (iterator.hasNext()) {
+                Film film = iterator.next();
+                consumer.accept(mapToFilmResponse(film));
+                entityManager.detach(film);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Films of the library with their actors in one query, in the order of the given ids.
+     * Ids of films not in the library are skipped.
+     */
+    @Transactional(readOnly = true)
+    public List<FilmDTO.Response> getFilmsByIds(String libraryId, List<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Integer, Film> films = filmRepository.findByLibraryIdAndIdIn(libraryId, filmIds).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(FilmService::mapToFilmResponse)
+                .collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
     public FilmDTO.Response getFilmById(Integer filmId) {
         Film film = filmRepository.findById(filmId)
                 .orElseThrow(() -> new IllegalArgumentException("Film not found"));
@@ -71,6 +249,8 @@ public class FilmService {
     public FilmDTO.Response updateFilm(Integer filmId, FilmDTO.Request request) {
         Film film = filmRepository.findById(filmId)
                 .orElseThrow(() -> new IllegalArgumentException("Film not found"));
+        // Values before the change, the statistics move from them to the new ones
+        LibraryStatsService.Delta delta = new LibraryStatsService.Delta().remove(film);
         
         if (request.getLang() != null) {
             film.setLang(request.getLang());
@@ -86,20 +266,31 @@ public class FilmService {
         }
         
         film = filmRepository.save(film);
+        libraryRepository.incrementVersion(film.getLibraryId());
+        libraryStatsService.apply(delta.add(film));
+        libraryChangeService.record(film.getLibraryId(), LibraryChange.Type.UPSERT, List.of(film.getId()));
+        eventPublisher.publishEvent(new FilmEvent(FilmEvent.Type.UPDATED, film.getLibraryId(), film.getId(), film.getTitle()));
         
         return mapToFilmResponse(film);
     }
 
     @Transactional
     public void deleteFilm(Integer filmId) {
-        if (!filmRepository.existsById(filmId)) {
-            throw new IllegalArgumentException("Film not found");
-        }
+        Film film = filmRepository.findById(filmId)
+                .orElseThrow(() -> new IllegalArgumentException("Film not found"));
         
-        filmRepository.deleteById(filmId);
+        LibraryStatsService.Delta delta = new LibraryStatsService.Delta().remove(film);
+        filmRepository.delete(film);
+        libraryRepository.incrementVersion(film.getLibraryId());
+        libraryStatsService.apply(delta);
+        libraryChangeService.record(film.getLibraryId(), LibraryChange.Type.DELETE, List.of(film.getId()));
+        eventPublisher.publishEvent(new FilmEvent(FilmEvent.Type.DELETED, film.getLibraryId(), film.getId(), film.getTitle()));
     }
 
-    private FilmDTO.Response mapToFilmResponse(Film film) {
+    /**
+     * Package-private for the mapping benchmark.
+     */
+    static FilmDTO.Response mapToFilmResponse(Film film) {
         FilmDTO.Response response = new FilmDTO.Response();
         response.setId(film.getId());
         response.setLibraryId(film.getLibraryId());
@@ -114,17 +305,24 @@ public class FilmService {
         response.setOpinion(film.getOpinion());
         response.setDirector(mapToPersonDto(film.getDirector()));
         response.setActors(film.getActors().stream()
-                .map(this::mapToPersonDto)
+                .map(FilmService::mapToPersonDto)
                 .collect(Collectors.toList()));
         return response;
     }
 
-    private PersonDto mapToPersonDto(Person person) {
+    private static PersonDto mapToPersonDto(Person person) {
         if (person == null) {
             return null;
         }
         return new PersonDto(person.getFirstname(), person.getLastname());
     }
+
+    @Getter
+    @AllArgsConstructor
+    public static class VersionedFilms {
+        private final long version;
+        private final List<FilmDTO.Response> films;
+    }
     
 }
 
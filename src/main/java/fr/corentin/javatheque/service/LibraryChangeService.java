@@ -0,0 +1,176 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.model.LibraryChange;
+import fr.corentin.javatheque.repository.LibraryChangeRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal of the film changes of each library, so that sync clients fetch what changed since their last sync
+ * instead of the whole library. FilmService records every change with the library version it bumped, in the
+ * same transaction: the version update locks the library row, so the changes of a library commit in version order
+ * and a sync token is simply the version it was read at.
+ * Changes older than library.changes.retention are compacted, the library keeps the highest version removed
+ * (changes_floor) and tokens below it get a full resync.
+ */
+@Slf4j
+@Service
+public class LibraryChangeService {
+
+    private static final String INSERT = "INSERT INTO library_changes "
+            + "(library_id, version, film_id, change_type, changed_at) "
+            + "VALUES (?, (SELECT version FROM libraries WHERE id = ?), ?, ?, ?)";
+
+    private final LibraryChangeRepository libraryChangeRepository;
+    private final LibraryRepository libraryRepository;
+    private final EntityManager entityManager;
+    private final Duration retention;
+    private final boolean compactionEnabled;
+
+    public LibraryChangeService(LibraryChangeRepository libraryChangeRepository,
+                                LibraryRepository libraryRepository,
+                                EntityManager entityManager,
+                                @Value("${library.changes.retention:30d}") Duration retention,
+                                @Value("${library.changes.compaction-enabled:true}") boolean compactionEnabled) {
+        this.libraryChangeRepository = libraryChangeRepository;
+        this.libraryRepository = libraryRepository;
+        this.entityManager = entityManager;
+        this.retention = retention;
+        this.compactionEnabled = compactionEnabled;
+    }
+
+    /**
+     * Journals changes of films of a library, in the caller's transaction and after it bumped the library version:
+     * the rows take the current version of the library. One JDBC batch whatever the number of films.
+     */
+    public void record(String libraryId, LibraryChange.Type type, Collection<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+        Timestamp changedAt = Timestamp.valueOf(LocalDateTime.now());
+        Session session = entityManager.unwrap(Session.class);
+        // Hibernate only inspects the statements it prepares itself, ours go through the same inspector so that
+        // the per-request statement count sees them
+        StatementInspector inspector = session.unwrap(SessionImplementor.class).getJdbcSessionContext()
+                .getStatementInspector();
+        session.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(inspector.inspect(INSERT))) {
+                for (Integer filmId : filmIds) {
+                    insert.setString(1, libraryId);
+                    insert.setString(2, libraryId);
+                    insert.setInt(3, filmId);
+                    insert.setString(4, type.name());
+                    insert.setTimestamp(5, changedAt);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Films changed since the token, the latest change of each film only, with the token of the current version.
+     * Asks for a full resync when there is no usable token: missing, malformed, of another library, or older than
+     * the journal.
+     */
+    @Transactional(readOnly = true)
+    public ChangeSet getChanges(String libraryId, String token) {
+        LibraryRepository.SyncState state = libraryRepository.findSyncStateById(libraryId)
+                .orElseThrow(() -> new IllegalArgumentException("Library not found"));
+        String nextToken = encodeToken(libraryId, state.getVersion());
+        Long since = token != null ? decodeToken(libraryId, token) : null;
+        if (since == null || since < state.getChangesFloor() || since > state.getVersion()) {
+            return new ChangeSet(true, List.of(), List.of(), nextToken);
+        }
+
+        Map<Integer, LibraryChange.Type> latest = new LinkedHashMap<>();
+        for (LibraryChange change : libraryChangeRepository.findChanges(libraryId, since, state.getVersion())) {
+            // Re-inserted so films come in the order of their last change
+            latest.remove(change.getFilmId());
+            latest.put(change.getFilmId(), change.getType());
+        }
+        List<Integer> upserted = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        latest.forEach((filmId, type) -> (type == LibraryChange.Type.DELETE ? deleted : upserted).add(filmId));
+        return new ChangeSet(false, upserted, deleted, nextToken);
+    }
+
+    /**
+     * Removes the changes past the retention. The floors are raised first, in the same transaction, so no token
+     * can ever be answered from a journal missing some of its changes.
+     * Every instance runs it on its own schedule, there is no coordination between them: runs overlapping on several
+     * instances are harmless (floors only go up, deleting rows already deleted does nothing) but redundant, so with
+     * several instances set library.changes.compaction-enabled=false on all of them but one.
+     */
+    @Scheduled(fixedDelayString = "${library.changes.compaction-interval:PT1H}")
+    @Transactional
+    public int compact() {
+        if (!compactionEnabled) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        libraryChangeRepository.raiseChangesFloors(cutoff);
+        int removed = libraryChangeRepository.deleteOlderThan(cutoff);
+        if (removed > 0) {
+            log.info("Compacted {} library changes older than {}", removed, cutoff);
+        }
+        return removed;
+    }
+
+    private static String encodeToken(String libraryId, long version) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((libraryId + ':' + version).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Version of the token, null when it is malformed or was issued for another library.
+     */
+    private static Long decodeToken(String libraryId, String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(':');
+            if (separator < 0 || !decoded.substring(0, separator).equals(libraryId)) {
+                return null;
+            }
+            return Long.parseLong(decoded.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            // Malformed base64 or version, the client starts over
+            return null;
+        }
+    }
+
+    /**
+     * Ids of the films to fetch again and of the deleted ones, or a full resync request.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class ChangeSet {
+        private final boolean resync;
+        private final List<Integer> upserted;
+        private final List<Integer> deleted;
+        private final String token;
+    }
+
+}
@@ -0,0 +1,112 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Opaque keyset cursor for library listings.
+ * Carries the sort key, the direction and the key values of the last film of the previous page.
+ */
+@Getter
+@AllArgsConstructor
+public class LibraryCursor {
+
+    private static final Gson GSON = new Gson();
+    private static final String ID_PROPERTY = "id";
+
+    private final SortKey sortKey;
+    private final Sort.Direction direction;
+    private final Map<String, Object> keys;
+
+    @Getter
+    @AllArgsConstructor
+    public enum SortKey {
+        TITLE("title"),
+        YEAR("year"),
+        RATE("rate"),
+        ADDED("createdAt");
+
+        private final String property;
+
+        public static SortKey fromParameter(String value) {
+            try {
+                return SortKey.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort key: " + value);
+            }
+        }
+    }
+
+    public static LibraryCursor first(SortKey sortKey, Sort.Direction direction) {
+        return new LibraryCursor(sortKey, direction, Map.of());
+    }
+
+    public Sort toSort() {
+        // The id breaks ties so that the keyset is unique
+        return Sort.by(direction, sortKey.getProperty(), ID_PROPERTY);
+    }
+
+    public ScrollPosition toScrollPosition() {
+        return keys.isEmpty() ? ScrollPosition.keyset() : ScrollPosition.forward(keys);
+    }
+
+    public LibraryCursor next(KeysetScrollPosition lastPosition) {
+        return new LibraryCursor(sortKey, direction, lastPosition.getKeys());
+    }
+
+    public String encode() {
+        JsonObject keyValues = new JsonObject();
+        keys.forEach((property, value) -> keyValues.addProperty(property, String.valueOf(value)));
+
+        JsonObject json = new JsonObject();
+        json.addProperty("s", sortKey.name());
+        json.addProperty("d", direction.name());
+        json.add("k", keyValues);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static LibraryCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            JsonObject json = GSON.fromJson(decoded, JsonObject.class);
+            SortKey sortKey = SortKey.valueOf(json.get("s").getAsString());
+            Sort.Direction direction = Sort.Direction.valueOf(json.get("d").getAsString());
+
+            Map<String, Object> keys = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject("k").entrySet()) {
+                keys.put(entry.getKey(), parseKey(entry.getKey(), entry.getValue().getAsString()));
+            }
+            if (keys.containsKey(sortKey.getProperty()) && keys.containsKey(ID_PROPERTY)) {
+                return new LibraryCursor(sortKey, direction, keys);
+            }
+        } catch (RuntimeException e) {
+            // Malformed base64, JSON or key value: reported below as a client error
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    private static Object parseKey(String property, String value) {
+        return switch (property) {
+            case "id" -> Integer.valueOf(value);
+            case "rate" -> Float.valueOf(value);
+            case "createdAt" -> LocalDateTime.parse(value);
+            case "title", "year" -> value;
+            default -> throw new IllegalArgumentException("Unknown cursor key: " + property);
+        };
+    }
+
+}
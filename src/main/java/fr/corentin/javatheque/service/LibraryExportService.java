@@ -0,0 +1,98 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import fr.corentin.javatheque.dto.FilmDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Writes a library to an output stream film by film, without building the collection in memory.
+ */
+@Service
+@RequiredArgsConstructor
+public class LibraryExportService {
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final FilmService filmService;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    @Getter
+    @AllArgsConstructor
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        JSON("application/json", "json");
+
+        private final String contentType;
+        private final String extension;
+
+        public static Format fromParameter(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown export format: " + value);
+            }
+        }
+    }
+
+    public long exportLibrary(String libraryId, Format format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+        if (format == Format.JSON) {
+            writer.write('[');
+        }
+
+        long count;
+        try {
+            count = filmService.forEachFilmInLibrary(libraryId, new FilmWriter(writer, format));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (format == Format.JSON) {
+            writer.write(']');
+        }
+        writer.flush();
+        return count;
+    }
+
+    @RequiredArgsConstructor
+    private class FilmWriter implements Consumer<FilmDTO.Response> {
+
+        private final Writer writer;
+        private final Format format;
+        private long written;
+
+        @Override
+        public void accept(FilmDTO.Response film) {
+            try {
+                if (format == Format.JSON && written > 0) {
+                    writer.write(',');
+                }
+                gson.toJson(film, FilmDTO.Response.class, writer);
+                if (format == Format.NDJSON) {
+                    writer.write('\n');
+                }
+                if (++written % FLUSH_EVERY == 0) {
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
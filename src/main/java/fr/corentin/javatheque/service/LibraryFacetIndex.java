@@ -0,0 +1,345 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Per-library facet index: one bitset of films per director, actor, support and lang value,
+ * plus year and rate columns. Filtering and counting run in memory on a snapshot built with two queries.
+ * A snapshot is tagged with the library version it was built at and rebuilt when a query finds the library at
+ * a newer version, whichever instance wrote to it.
+ */
+@Slf4j
+@Service
+public class LibraryFacetIndex {
+
+    public static final String DIRECTOR = "director";
+    public static final String ACTOR = "actor";
+    public static final String SUPPORT = "support";
+    public static final String LANG = "lang";
+    public static final String YEAR = "year";
+    public static final String RATE = "rate";
+
+    private static final int TOP_VALUES = 20;
+    private static final int UNKNOWN_YEAR = Integer.MIN_VALUE;
+
+    private final FilmRepository filmRepository;
+    private final LibraryRepository libraryRepository;
+    private final Cache<String, FacetSnapshot> snapshots;
+
+    public LibraryFacetIndex(
+            FilmRepository filmRepository,
+            LibraryRepository libraryRepository,
+            @Value("${library.facets.max-films:1000000}") long maxFilms,
+            @Value("${library.facets.idle-timeout:30m}") Duration idleTimeout) {
+        this.filmRepository = filmRepository;
+        this.libraryRepository = libraryRepository;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumWeight(maxFilms)
+                .weigher((String libraryId, FacetSnapshot snapshot) -> Math.max(1, snapshot.size))
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class FacetMatch {
+        private final int total;
+        private final List<Integer> filmIds;
+        private final Map<String, List<LibraryDTO.FacetCount>> facets;
+    }
+
+    /**
+     * Films matching the query (one page, ordered by title) and the counts of every facet.
+     * The counts of a facet ignore its own filter so that the other values stay selectable.
+     */
+    @Transactional(readOnly = true)
+    public FacetMatch query(String libraryId, LibraryDTO.FacetQuery query) {
+        // Read before the films and in the same transaction, on the same replica, so a snapshot is never tagged
+        // newer than its contents
+        long version = libraryRepository.findVersionById(libraryId)
+                .orElseThrow(() -> new IllegalArgumentException("Library not found"));
+        // A snapshot newer than the version read is kept, the replica read from lags behind
+        FacetSnapshot snapshot = snapshots.asMap().compute(libraryId, (id, current) ->
+                current != null && current.version >= version ? current : build(id, version));
+
+        BitSet matches = snapshot.match(query, null);
+
+        int size = Math.max(1, Math.min(query.getSize(), FilmService.MAX_PAGE_SIZE));
+        int page = Math.max(0, query.getPage());
+        return new FacetMatch(matches.cardinality(), snapshot.page(matches, page, size), snapshot.facets(query));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onFilmEvent(FilmEvent event) {
+        // Outdated by the version bump anyway, dropped now rather than when next queried or idle
+        snapshots.invalidate(event.getLibraryId());
+    }
+
+    private FacetSnapshot build(String libraryId, long version) {
+        List<Object[]> films = filmRepository.findFacetRowsByLibraryId(libraryId);
+        List<Object[]> actors = filmRepository.findActorRowsByLibraryId(libraryId);
+        FacetSnapshot snapshot = new FacetSnapshot(version, films, actors);
+        log.debug("Built facet index of library {} at version {} ({} films)", libraryId, version, snapshot.size);
+        return snapshot;
+    }
+
+    private static String fullName(Object firstname, Object lastname) {
+        String name = ((firstname != null ? firstname : "") + " " + (lastname != null ? lastname : "")).trim();
+        return name.isEmpty() ? null : name;
+    }
+
+    private static int parseYear(String year) {
+        try {
+            return year != null ? Integer.parseInt(year.trim()) : UNKNOWN_YEAR;
+        } catch (NumberFormatException e) {
+            return UNKNOWN_YEAR;
+        }
+    }
+
+    /**
+     * Immutable column store of a library, films are addressed by their ordinal in the snapshot.
+     */
+    static class FacetSnapshot {
+
+        /**
+         * Version of the library the snapshot was built at.
+         */
+        private final long version;
+        private final int size;
+        private final int[] filmIds;
+        private final int[] byTitle;
+        private final int[] years;
+        private final float[] rates;
+        private final Dimension directors = new Dimension();
+        private final Dimension actors = new Dimension();
+        private final Dimension supports = new Dimension();
+        private final Dimension langs = new Dimension();
+
+        FacetSnapshot(long version, List<Object[]> filmRows, List<Object[]> actorRows) {
+            this.version = version;
+            size = filmRows.size();
+            filmIds = new int[size];
+            years = new int[size];
+            rates = new float[size];
+            String[] titles = new String[size];
+            Map<Integer, Integer> ordinals = new HashMap<>();
+
+            for (int i = 0; i < size; i++) {
+                Object[] row = filmRows.get(i);
+                filmIds[i] = (Integer) row[0];
+                ordinals.put(filmIds[i], i);
+                titles[i] = row[1] != null ? ((String) row[1]).toLowerCase(Locale.ROOT) : "";
+                directors.add(i, fullName(row[2], row[3]));
+                years[i] = parseYear((String) row[4]);
+                supports.add(i, (String) row[5]);
+                langs.add(i, (String) row[6]);
+                rates[i] = row[7] != null ? ((Number) row[7]).floatValue() : Float.NaN;
+            }
+            for (Object[] row : actorRows) {
+                Integer ordinal = ordinals.get((Integer) row[0]);
+                if (ordinal != null) {
+                    actors.add(ordinal, fullName(row[1], row[2]));
+                }
+            }
+
+            byTitle = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparing(i -> titles[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            directors.seal(size);
+            actors.seal(size);
+            supports.seal(size);
+            langs.seal(size);
+        }
+
+        Map<String, List<LibraryDTO.FacetCount>> facets(LibraryDTO.FacetQuery query) {
+            Map<String, List<LibraryDTO.FacetCount>> facets = new LinkedHashMap<>();
+            facets.put(DIRECTOR, directors.count(match(query, DIRECTOR), TOP_VALUES));
+            facets.put(ACTOR, actors.count(match(query, ACTOR), TOP_VALUES));
+            facets.put(SUPPORT, supports.count(match(query, SUPPORT), Integer.MAX_VALUE));
+            facets.put(LANG, langs.count(match(query, LANG), Integer.MAX_VALUE));
+            facets.put(YEAR, countYears(match(query, YEAR)));
+            facets.put(RATE, countRates(match(query, RATE)));
+            return facets;
+        }
+
+        BitSet match(LibraryDTO.FacetQuery query, String excludedFacet) {
+            BitSet result = new BitSet(size);
+            result.set(0, size);
+            if (!DIRECTOR.equals(excludedFacet)) {
+                directors.restrict(result, query.getDirector());
+            }
+            if (!ACTOR.equals(excludedFacet)) {
+                actors.restrict(result, query.getActor());
+            }
+            if (!SUPPORT.equals(excludedFacet)) {
+                supports.restrict(result, query.getSupport());
+            }
+            if (!LANG.equals(excludedFacet)) {
+                langs.restrict(result, query.getLang());
+            }
+            if (!YEAR.equals(excludedFacet) && (query.getYearFrom() != null || query.getYearTo() != null)) {
+                int from = query.getYearFrom() != null ? query.getYearFrom() : Integer.MIN_VALUE + 1;
+                int to = query.getYearTo() != null ? query.getYearTo() : Integer.MAX_VALUE;
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    if (years[i] == UNKNOWN_YEAR || years[i] < from || years[i] > to) {
+                        result.clear(i);
+                    }
+                }
+            }
+            if (!RATE.equals(excludedFacet) && (query.getRateMin() != null || query.getRateMax() != null)) {
+                float min = query.getRateMin() != null ? query.getRateMin() : Float.NEGATIVE_INFINITY;
+                float max = query.getRateMax() != null ? query.getRateMax() : Float.POSITIVE_INFINITY;
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    // NaN (no rate) fails both comparisons and is filtered out
+                    if (!(rates[i] >= min && rates[i] <= max)) {
+                        result.clear(i);
+                    }
+                }
+            }
+            return result;
+        }
+
+        List<Integer> page(BitSet matches, int page, int pageSize) {
+            List<Integer> ids = new ArrayList<>(pageSize);
+            long skip = (long) page * pageSize;
+            for (int ordinal : byTitle) {
+                if (!matches.get(ordinal)) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                ids.add(filmIds[ordinal]);
+                if (ids.size() == pageSize) {
+                    break;
+                }
+            }
+            return ids;
+        }
+
+        private List<LibraryDTO.FacetCount> countYears(BitSet films) {
+            Map<Integer, Integer> counts = new TreeMap<>();
+            for (int i = films.nextSetBit(0); i >= 0; i = films.nextSetBit(i + 1)) {
+                if (years[i] != UNKNOWN_YEAR) {
+                    counts.merge(years[i], 1, Integer::sum);
+                }
+            }
+            List<LibraryDTO.FacetCount> result = new ArrayList<>(counts.size());
+            counts.forEach((year, count) -> result.add(new LibraryDTO.FacetCount(String.valueOf(year), count)));
+            return result;
+        }
+
+        private List<LibraryDTO.FacetCount> countRates(BitSet films) {
+            // One bucket per rating point, 10 included
+            int[] counts = new int[11];
+            for (int i = films.nextSetBit(0); i >= 0; i = films.nextSetBit(i + 1)) {
+                if (!Float.isNaN(rates[i])) {
+                    counts[Math.max(0, Math.min(10, (int) rates[i]))]++;
+                }
+            }
+            List<LibraryDTO.FacetCount> result = new ArrayList<>();
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                if (counts[bucket] > 0) {
+                    result.add(new LibraryDTO.FacetCount(String.valueOf(bucket), counts[bucket]));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Values of one facet: a bitset of films per value and the value ordinals of every film.
+     */
+    static class Dimension {
+
+        private static final int[] NONE = new int[0];
+
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<BitSet> films = new ArrayList<>();
+        private final Map<Integer, List<Integer>> pending = new HashMap<>();
+        private int[][] valuesByFilm;
+
+        void add(int film, String value) {
+            if (value == null || value.isBlank()) {
+                return;
+            }
+            int ordinal = ordinals.computeIfAbsent(value, key -> {
+                values.add(key);
+                films.add(new BitSet());
+                return values.size() - 1;
+            });
+            films.get(ordinal).set(film);
+            pending.computeIfAbsent(film, key -> new ArrayList<>(1)).add(ordinal);
+        }
+
+        void seal(int filmCount) {
+            valuesByFilm = new int[filmCount][];
+            for (int film = 0; film < filmCount; film++) {
+                List<Integer> filmValues = pending.get(film);
+                valuesByFilm[film] = filmValues != null
+                        ? filmValues.stream().mapToInt(Integer::intValue).toArray()
+                        : NONE;
+            }
+            pending.clear();
+        }
+
+        void restrict(BitSet result, List<String> selected) {
+            if (selected == null || selected.isEmpty()) {
+                return;
+            }
+            BitSet allowed = new BitSet();
+            for (String value : selected) {
+                Integer ordinal = ordinals.get(value);
+                if (ordinal != null) {
+                    allowed.or(films.get(ordinal));
+                }
+            }
+            result.and(allowed);
+        }
+
+        List<LibraryDTO.FacetCount> count(BitSet base, int limit) {
+            int[] counts = new int[values.size()];
+            for (int i = base.nextSetBit(0); i >= 0; i = base.nextSetBit(i + 1)) {
+                for (int ordinal : valuesByFilm[i]) {
+                    counts[ordinal]++;
+                }
+            }
+            return IntStream.range(0, counts.length)
+                    .filter(ordinal -> counts[ordinal] > 0)
+                    .boxed()
+                    .sorted(Comparator.<Integer>comparingInt(ordinal -> -counts[ordinal])
+                            .thenComparing(values::get))
+                    .limit(limit)
+                    .map(ordinal -> new LibraryDTO.FacetCount(values.get(ordinal), counts[ordinal]))
+                    .toList();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Library listings kept already serialized, as UTF-8 JSON and gzip, so unchanged libraries are written
+ * straight from byte arrays without mapping nor serializing the films again.
+ * Entries are keyed by the library ETag: a film change bumps the library version (see FilmService), so the next
+ * read misses and rebuilds, and the entry of the previous version is dropped at that point. Films are serialized
+ * after the loader returned, outside of its transaction.
+ * Held in the libraryResponses cache, bounded by library.cache.responses.max-size (see CacheConfig). The key of
+ * each library is tracked until its entry leaves the cache, evicted or replaced.
+ */
+@Component
+public class LibraryResponseCache {
+
+    static final String CACHE_NAME = "libraryResponses";
+
+    private final SingleFlightCache singleFlightCache;
+    private final JsonMapper jsonMapper;
+    private final Map<String, String> currentKeys = new ConcurrentHashMap<>();
+
+    public LibraryResponseCache(SingleFlightCache singleFlightCache, JsonMapper jsonMapper) {
+        this.singleFlightCache = singleFlightCache;
+        this.jsonMapper = jsonMapper;
+    }
+
+    /**
+     * Serialized films of the library at the version of the ETag, loaded and serialized on a miss.
+     * Concurrent misses of a same version share one load. The loader may read the library at another version
+     * (a replica ahead of or behind the one the ETag was read from): the body then carries the ETag of what was
+     * read and is handed to the waiting callers without being cached.
+     */
+    public Body get(String libraryId, String eTag, Supplier<TaggedFilms> loader) {
+        return singleFlightCache.get(CACHE_NAME, eTag, () -> {
+            TaggedFilms films = loader.get();
+            Body body = Body.of(films.getETag(), jsonMapper.writeValueAsBytes(films.getFilms()));
+            if (!eTag.equals(films.getETag())) {
+                return body;
+            }
+            body.onRemoval = () -> currentKeys.remove(libraryId, eTag);
+            String previous = currentKeys.put(libraryId, eTag);
+            if (previous != null && !previous.equals(eTag)) {
+                singleFlightCache.evict(CACHE_NAME, previous);
+            }
+            return body;
+        }, body -> eTag.equals(body.getETag()));
+    }
+
+    /**
+     * Number of libraries whose current key is tracked, for tests.
+     */
+    int trackedLibraries() {
+        return currentKeys.size();
+    }
+
+    /**
+     * Films and the ETag of the library version they were read at.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class TaggedFilms {
+        private final String eTag;
+        private final List<FilmDTO.Response> films;
+    }
+
+    @Getter
+    public static final class Body {
+
+        /**
+         * Bodies smaller than this are not worth a gzip copy.
+         */
+        static final int MIN_GZIP_SIZE = 1024;
+
+        /**
+         * ETag of the library version serialized.
+         */
+        private final String eTag;
+        private final byte[] json;
+        /**
+         * Null when compressing does not pay off.
+         */
+        private final byte[] gzip;
+        /**
+         * Forgets the library key of this entry, run once the cache dropped it.
+         */
+        private volatile Runnable onRemoval;
+
+        private Body(String eTag, byte[] json, byte[] gzip) {
+            this.eTag = eTag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        static Body of(String eTag, byte[] json) {
+            if (json.length < MIN_GZIP_SIZE) {
+                return new Body(eTag, json, null);
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Body(eTag, json, compressed.size() < json.length ? compressed.toByteArray() : null);
+        }
+
+        /**
+         * Called by the removal listener of the libraryResponses cache.
+         */
+        public void removed() {
+            Runnable callback = onRemoval;
+            if (callback != null) {
+                callback.run();
+            }
+        }
+
+        /**
+         * Weight of the entry in the cache budget.
+         */
+        public int estimatedBytes() {
+            return json.length + (gzip != null ? gzip.length : 0) + 64;
+        }
+    }
+
+}
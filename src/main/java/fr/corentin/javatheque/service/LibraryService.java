@@ -1,12 +1,16 @@
 package fr.corentin.javatheque.service;
 
 import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
 import fr.corentin.javatheque.model.Library;
 import fr.corentin.javatheque.repository.LibraryRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -14,21 +18,114 @@ public class LibraryService {
     
     private final LibraryRepository libraryRepository;
     private final FilmService filmService;
+    private final LibraryTitleIndex libraryTitleIndex;
+    private final LibraryFacetIndex libraryFacetIndex;
+    private final LibraryResponseCache libraryResponseCache;
+    private final LibraryStatsService libraryStatsService;
+    private final LibraryChangeService libraryChangeService;
 
+    @Transactional(readOnly = true)
     public Library getLibraryByOwnerId(String ownerId) {
         return libraryRepository.findByOwnerId(ownerId)
                 .orElseThrow(() -> new IllegalArgumentException("Library not found for user"));
     }
 
-    public List<FilmDTO.Response> getUserLibraryFilms(String userId) {
-        Library library = getLibraryByOwnerId(userId);
-        return filmService.getFilmsByLibrary(library.getId());
+    /**
+     * Id of the user's library. It never changes, so it is cached until the user is deleted (see UserService).
+     */
+    @Cacheable(cacheNames = "libraryIds", sync = true)
+    public String getLibraryIdByOwnerId(String ownerId) {
+        return getLibraryByOwnerId(ownerId).getId();
     }
 
-    public List<FilmDTO.Response> searchUserLibraryFilms(String userId, String title) {
-        Library library = getLibraryByOwnerId(userId);
-        return filmService.searchFilmsInLibrary(library.getId(), title);
+    /**
+     * Strong ETag of the library contents: its id and version, bumped by every film change.
+     * Read before the films so a response is never tagged newer than its contents.
+     */
+    @Transactional(readOnly = true)
+    public String getLibraryETag(String libraryId) {
+        long version = libraryRepository.findVersionById(libraryId)
+                .orElseThrow(() -> new IllegalArgumentException("Library not found"));
+        return eTag(libraryId, version);
+    }
+
+    /**
+     * Runs the reads of a tagged library response in one read-only transaction: the version and the contents then
+     * come from the same snapshot of the same database, whereas separate transactions may each go to a different
+     * replica, one of them lagging behind the version read.
+     */
+    @Transactional(readOnly = true)
+    public <T> T withLibraryETag(String libraryId, Function<String, T> read) {
+        return read.apply(getLibraryETag(libraryId));
+    }
+
+    public List<FilmDTO.Response> getLibraryFilms(String libraryId) {
+        return filmService.getFilmsByLibrary(libraryId);
+    }
+
+    /**
+     * Films of the library already serialized, from LibraryResponseCache. On a miss the films and the version are
+     * read in one transaction and serialized once it is over, so no connection is held while serializing and
+     * compressing. The body carries the ETag of the version actually read, which may differ from the given one.
+     */
+    public LibraryResponseCache.Body getSerializedLibraryFilms(String libraryId, String eTag) {
+        return libraryResponseCache.get(libraryId, eTag, () -> {
+            FilmService.VersionedFilms films = filmService.getVersionedFilmsByLibrary(libraryId);
+            return new LibraryResponseCache.TaggedFilms(eTag(libraryId, films.getVersion()), films.getFilms());
+        });
+    }
+
+    public List<FilmDTO.Response> searchLibraryFilms(String libraryId, String title) {
+        List<Integer> filmIds = libraryTitleIndex.search(libraryId, title);
+        if (filmIds == null) {
+            // Library too large for the in-memory index
+            return filmService.searchFilmsInLibrary(libraryId, title);
+        }
+        return filmService.getFilmsByIds(libraryId, filmIds);
+    }
+
+    public LibraryDTO.Page getLibraryPage(String libraryId, String title, LibraryCursor cursor, int size) {
+        return filmService.getFilmPage(libraryId, title, cursor, size);
+    }
+
+    public LibraryDTO.FacetResult getLibraryFacets(String libraryId, LibraryDTO.FacetQuery query) {
+        LibraryFacetIndex.FacetMatch match = libraryFacetIndex.query(libraryId, query);
+        return new LibraryDTO.FacetResult(
+                match.getTotal(),
+                filmService.getFilmsByIds(libraryId, match.getFilmIds()),
+                match.getFacets()
+        );
+    }
+
+    public LibraryDTO.Stats getLibraryStats(String libraryId) {
+        return libraryStatsService.getStats(libraryId);
+    }
+
+    /**
+     * Recomputes the statistics from the films, to repair them.
+     */
+    public LibraryDTO.Stats rebuildLibraryStats(String libraryId) {
+        libraryStatsService.rebuild(libraryId);
+        return libraryStatsService.getStats(libraryId);
+    }
+
+    /**
+     * Films changed since the sync token (see LibraryChangeService), or the whole library when it needs a resync.
+     * A single transaction, so the films are read at the version of the returned token.
+     */
+    @Transactional(readOnly = true)
+    public LibraryDTO.Changes getLibraryChanges(String libraryId, String token) {
+        LibraryChangeService.ChangeSet changes = libraryChangeService.getChanges(libraryId, token);
+        if (changes.isResync()) {
+            return new LibraryDTO.Changes(true, filmService.getFilmsByLibrary(libraryId), List.of(),
+                    changes.getToken());
+        }
+        return new LibraryDTO.Changes(false, filmService.getFilmsByIds(libraryId, changes.getUpserted()),
+                changes.getDeleted(), changes.getToken());
+    }
+
+    private static String eTag(String libraryId, long version) {
+        return "\"" + libraryId + '-' + version + "\"";
     }
     
 }
-
@@ -0,0 +1,266 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.LibraryStat;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import fr.corentin.javatheque.repository.LibraryStatRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Collection dashboard of a library: films per decade and support, top directors and actors, average rate.
+ * Served from the library_stats aggregate rows, so reading it costs the same whatever the size of the library.
+ * FilmService applies the change of each added, updated or deleted film in its own transaction, a handful of
+ * upserts per film. rebuild recomputes the rows of a library from its films, to repair them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LibraryStatsService {
+
+    /**
+     * Directors and actors listed on the dashboard.
+     */
+    public static final int TOP_VALUES = 10;
+
+    private static final int MAX_LABEL_LENGTH = 255;
+    private static final String UPSERT = "INSERT INTO library_stats "
+            + "(library_id, dimension, label, film_count, rate_sum, rate_count) VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE film_count = film_count + VALUES(film_count), "
+            + "rate_sum = rate_sum + VALUES(rate_sum), rate_count = rate_count + VALUES(rate_count)";
+    private static final String DELETE_EMPTY = "DELETE FROM library_stats "
+            + "WHERE library_id = ? AND dimension = ? AND label = ? AND film_count <= 0";
+
+    private final LibraryStatRepository libraryStatRepository;
+    private final LibraryRepository libraryRepository;
+    private final FilmRepository filmRepository;
+    private final EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public LibraryDTO.Stats getStats(String libraryId) {
+        int total = 0;
+        BigDecimal rateSum = BigDecimal.ZERO;
+        int rated = 0;
+        List<LibraryDTO.FacetCount> decades = new ArrayList<>();
+        List<LibraryDTO.FacetCount> supports = new ArrayList<>();
+        for (LibraryStat stat : libraryStatRepository.findByLibraryIdAndDimensionIn(libraryId,
+                EnumSet.of(LibraryStat.Dimension.TOTAL, LibraryStat.Dimension.DECADE, LibraryStat.Dimension.SUPPORT))) {
+            switch (stat.getDimension()) {
+                case TOTAL -> {
+                    total = stat.getFilmCount();
+                    rateSum = stat.getRateSum();
+                    rated = stat.getRateCount();
+                }
+                case DECADE -> decades.add(new LibraryDTO.FacetCount(stat.getLabel(), stat.getFilmCount()));
+                default -> supports.add(new LibraryDTO.FacetCount(stat.getLabel(), stat.getFilmCount()));
+            }
+        }
+        decades.sort(Comparator.comparing(decade -> Integer.parseInt(decade.getValue())));
+        supports.sort(Comparator.comparingInt(LibraryDTO.FacetCount::getCount).reversed()
+                .thenComparing(LibraryDTO.FacetCount::getValue));
+
+        Double averageRate = rated > 0
+                ? rateSum.divide(BigDecimal.valueOf(rated), 2, RoundingMode.HALF_UP).doubleValue()
+                : null;
+        return new LibraryDTO.Stats(total, rated, averageRate, decades, supports,
+                top(libraryId, LibraryStat.Dimension.DIRECTOR), top(libraryId, LibraryStat.Dimension.ACTOR));
+    }
+
+    /**
+     * Applies the changes collected in the delta, in the caller's transaction.
+     * The upserts go in one JDBC batch, rows left without films are deleted.
+     */
+    public void apply(Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        // Inspected like the statements Hibernate prepares, for QueryCountInspector to count them
+        StatementInspector inspector = session.unwrap(SessionImplementor.class).getJdbcSessionContext()
+                .getStatementInspector();
+        session.doWork(connection -> {
+            boolean removals = false;
+            try (PreparedStatement upsert = connection.prepareStatement(inspector.inspect(UPSERT))) {
+                for (Map.Entry<LibraryStat.Key, Change> entry : delta.changes.entrySet()) {
+                    LibraryStat.Key key = entry.getKey();
+                    Change change = entry.getValue();
+                    upsert.setString(1, key.getLibraryId());
+                    upsert.setString(2, key.getDimension().name());
+                    upsert.setString(3, key.getLabel());
+                    upsert.setInt(4, change.films);
+                    upsert.setBigDecimal(5, change.rateSum);
+                    upsert.setInt(6, change.rated);
+                    upsert.addBatch();
+                    removals |= change.films < 0;
+                }
+                upsert.executeBatch();
+            }
+            if (!removals) {
+                return;
+            }
+            try (PreparedStatement deleteEmpty = connection.prepareStatement(inspector.inspect(DELETE_EMPTY))) {
+                for (Map.Entry<LibraryStat.Key, Change> entry : delta.changes.entrySet()) {
+                    if (entry.getValue().films < 0) {
+                        deleteEmpty.setString(1, entry.getKey().getLibraryId());
+                        deleteEmpty.setString(2, entry.getKey().getDimension().name());
+                        deleteEmpty.setString(3, entry.getKey().getLabel());
+                        deleteEmpty.addBatch();
+                    }
+                }
+                deleteEmpty.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Recomputes the statistics of a library from its films, returns the number of films.
+     * The library version is bumped first: it locks the library row, so film changes wait for the rebuild
+     * instead of applying their delta to rows being replaced.
+     */
+    @Transactional
+    public long rebuild(String libraryId) {
+        libraryRepository.incrementVersion(libraryId);
+        Delta delta = new Delta();
+        long count = 0;
+        try (Stream<Film> films = filmRepository.streamByLibraryId(libraryId)) {
+            Iterator<Film> iterator = films.iterator();
+            while (iterator.hasNext()) {
+                Film film = iterator.next();
+                delta.add(film);
+                entityManager.detach(film);
+                count++;
+            }
+        }
+        libraryStatRepository.deleteByLibraryId(libraryId);
+        apply(delta);
+        log.info("Rebuilt statistics of library {} ({} films)", libraryId, count);
+        return count;
+    }
+
+    private List<LibraryDTO.FacetCount> top(String libraryId, LibraryStat.Dimension dimension) {
+        return libraryStatRepository.findByLibraryIdAndDimensionOrderByFilmCountDescLabelAsc(
+                        libraryId, dimension, Limit.of(TOP_VALUES)).stream()
+                .map(stat -> new LibraryDTO.FacetCount(stat.getLabel(), stat.getFilmCount()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Changes of the statistics rows for a set of film changes, merged by row.
+     * A film counts once per dimension value, its rate only when it is rated (above 0).
+     */
+    public static final class Delta {
+
+        private final Map<LibraryStat.Key, Change> changes = new LinkedHashMap<>();
+
+        public Delta add(Film film) {
+            return record(film, 1);
+        }
+
+        public Delta remove(Film film) {
+            return record(film, -1);
+        }
+
+        /**
+         * Also drops the rows whose changes cancel out, an update that keeps a film's values writes nothing.
+         */
+        boolean isEmpty() {
+            changes.values().removeIf(Change::isZero);
+            return changes.isEmpty();
+        }
+
+        private Delta record(Film film, int sign) {
+            BigDecimal rate = film.getRate() != null && film.getRate() > 0
+                    ? new BigDecimal(Float.toString(film.getRate())).setScale(2, RoundingMode.HALF_UP)
+                    : null;
+            String libraryId = film.getLibraryId();
+            change(libraryId, LibraryStat.Dimension.TOTAL, "", sign, rate);
+            change(libraryId, LibraryStat.Dimension.DECADE, decade(film.getYear()), sign, rate);
+            change(libraryId, LibraryStat.Dimension.SUPPORT, film.getSupport(), sign, rate);
+            change(libraryId, LibraryStat.Dimension.DIRECTOR, fullName(film.getDirector()), sign, rate);
+            Set<String> actors = new LinkedHashSet<>();
+            if (film.getActors() != null) {
+                for (Person actor : film.getActors()) {
+                    actors.add(fullName(actor));
+                }
+            }
+            for (String actor : actors) {
+                change(libraryId, LibraryStat.Dimension.ACTOR, actor, sign, rate);
+            }
+            return this;
+        }
+
+        private void change(String libraryId, LibraryStat.Dimension dimension, String label, int sign,
+                            BigDecimal rate) {
+            if (label == null) {
+                return;
+            }
+            label = label.trim();
+            if (label.isEmpty() && dimension != LibraryStat.Dimension.TOTAL) {
+                return;
+            }
+            if (label.length() > MAX_LABEL_LENGTH) {
+                label = label.substring(0, MAX_LABEL_LENGTH);
+            }
+            Change change = changes.computeIfAbsent(new LibraryStat.Key(libraryId, dimension, label),
+                    key -> new Change());
+            change.films += sign;
+            if (rate != null) {
+                change.rateSum = sign > 0 ? change.rateSum.add(rate) : change.rateSum.subtract(rate);
+                change.rated += sign;
+            }
+        }
+
+        private static String decade(String year) {
+            try {
+                return year != null ? String.valueOf(Math.floorDiv(Integer.parseInt(year.trim()), 10) * 10) : null;
+            } catch (NumberFormatException e) {
+                // "Unknown"
+                return null;
+            }
+        }
+
+        private static String fullName(Person person) {
+            if (person == null) {
+                return null;
+            }
+            return ((person.getFirstname() != null ? person.getFirstname() : "") + " "
+                    + (person.getLastname() != null ? person.getLastname() : "")).trim();
+        }
+    }
+
+    private static final class Change {
+        private int films;
+        private BigDecimal rateSum = BigDecimal.ZERO;
+        private int rated;
+
+        private boolean isZero() {
+            return films == 0 && rated == 0 && rateSum.signum() == 0;
+        }
+    }
+
+}
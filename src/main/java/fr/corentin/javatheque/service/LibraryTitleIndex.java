@@ -0,0 +1,245 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Per-library trigram index of film titles, answering substring and accent-insensitive searches in memory.
+ * Built lazily on the first search of a library and evicted once idle. An index is tagged with the library version
+ * it was built at and rebuilt when a search finds the library at a newer version, so changes made through
+ * another instance are seen too.
+ */
+@Slf4j
+@Service
+public class LibraryTitleIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int GRAM = 3;
+
+    private final FilmRepository filmRepository;
+    private final LibraryRepository libraryRepository;
+    private final int maxFilmsPerLibrary;
+    private final Cache<String, TitleIndex> indexes;
+
+    public LibraryTitleIndex(
+            FilmRepository filmRepository,
+            LibraryRepository libraryRepository,
+            @Value("${library.search.index.max-films-per-library:50000}") int maxFilmsPerLibrary,
+            @Value("${library.search.index.max-films:1000000}") long maxFilms,
+            @Value("${library.search.index.idle-timeout:30m}") Duration idleTimeout) {
+        this.filmRepository = filmRepository;
+        this.libraryRepository = libraryRepository;
+        this.maxFilmsPerLibrary = maxFilmsPerLibrary;
+        this.indexes = Caffeine.newBuilder()
+                .maximumWeight(maxFilms)
+                .weigher((String libraryId, TitleIndex index) -> Math.max(1, index.size()))
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    /**
+     * Ids of the films whose title contains the query, ordered by title.
+     * Returns null when the library is too large to be indexed, callers then fall back to SQL.
+     */
+    @Transactional(readOnly = true)
+    public List<Integer> search(String libraryId, String query) {
+        // Read before the titles and in the same transaction, on the same replica, so an index is never tagged
+        // newer than its contents
+        long version = libraryRepository.findVersionById(libraryId)
+                .orElseThrow(() -> new IllegalArgumentException("Library not found"));
+        // The oversized marker is versioned too, a library shrunk under the limit gets indexed. An index newer than
+        // the version read is kept, the replica read from lags behind
+        TitleIndex index = indexes.asMap().compute(libraryId, (id, current) ->
+                current != null && current.getVersion() >= version ? current : build(id, version));
+        if (index.isOversized()) {
+            return null;
+        }
+        return index.search(normalize(query));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onFilmEvent(FilmEvent event) {
+        // Outdated by the version bump anyway, dropped now rather than when next searched or idle
+        indexes.invalidate(event.getLibraryId());
+    }
+
+    private TitleIndex build(String libraryId, long version) {
+        List<FilmRepository.TitleView> titles = filmRepository.findTitlesByLibraryId(libraryId);
+        if (titles.size() > maxFilmsPerLibrary) {
+            log.debug("Library {} has {} films, title search stays on SQL", libraryId, titles.size());
+            return TitleIndex.oversized(version);
+        }
+
+        TitleIndex index = new TitleIndex(version);
+        titles.forEach(title -> index.put(title.getId(), normalize(title.getTitle())));
+        log.debug("Built title index of library {} at version {} ({} films)", libraryId, version, titles.size());
+        return index;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Inverted index from title trigrams to film ids. Trigrams are packed into a long (3 x 16-bit chars).
+     */
+    static class TitleIndex {
+
+        private final Map<Integer, String> titles = new HashMap<>();
+        private final Map<Long, Set<Integer>> postings = new HashMap<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final long version;
+        private final boolean oversized;
+
+        TitleIndex(long version) {
+            this(version, false);
+        }
+
+        private TitleIndex(long version, boolean oversized) {
+            this.version = version;
+            this.oversized = oversized;
+        }
+
+        static TitleIndex oversized(long version) {
+            return new TitleIndex(version, true);
+        }
+
+        /**
+         * Version of the library the index was built at.
+         */
+        long getVersion() {
+            return version;
+        }
+
+        boolean isOversized() {
+            return oversized;
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return titles.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void put(Integer filmId, String normalizedTitle) {
+            lock.writeLock().lock();
+            try {
+                removeUnlocked(filmId);
+                titles.put(filmId, normalizedTitle);
+                for (long gram : grams(normalizedTitle)) {
+                    postings.computeIfAbsent(gram, key -> new HashSet<>()).add(filmId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(Integer filmId) {
+            lock.writeLock().lock();
+            try {
+                removeUnlocked(filmId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<Integer> search(String normalizedQuery) {
+            lock.readLock().lock();
+            try {
+                List<Integer> matches = new ArrayList<>();
+                if (normalizedQuery.length() < GRAM) {
+                    // Too short to have a trigram, a scan of the in-memory titles is still cheap
+                    titles.forEach((filmId, title) -> {
+                        if (title.contains(normalizedQuery)) {
+                            matches.add(filmId);
+                        }
+                    });
+                } else {
+                    List<Set<Integer>> candidates = new ArrayList<>();
+                    for (long gram : grams(normalizedQuery)) {
+                        Set<Integer> posting = postings.get(gram);
+                        if (posting == null) {
+                            return List.of();
+                        }
+                        candidates.add(posting);
+                    }
+                    candidates.sort(Comparator.comparingInt(Set::size));
+
+                    // Intersect from the rarest trigram, then confirm the trigrams are contiguous
+                    for (Integer filmId : candidates.get(0)) {
+                        if (containsInAll(candidates, filmId) && titles.get(filmId).contains(normalizedQuery)) {
+                            matches.add(filmId);
+                        }
+                    }
+                }
+                matches.sort(Comparator.comparing(titles::get));
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void removeUnlocked(Integer filmId) {
+            String previous = titles.remove(filmId);
+            if (previous == null) {
+                return;
+            }
+            for (long gram : grams(previous)) {
+                Set<Integer> posting = postings.get(gram);
+                if (posting != null) {
+                    posting.remove(filmId);
+                    if (posting.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        }
+
+        private static boolean containsInAll(List<Set<Integer>> candidates, Integer filmId) {
+            for (int i = 1; i < candidates.size(); i++) {
+                if (!candidates.get(i).contains(filmId)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static Set<Long> grams(String text) {
+            Set<Long> grams = new HashSet<>();
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+            }
+            return grams;
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package fr.corentin.javatheque.service;
+
+/**
+ * Thrown when a password cannot be hashed or verified in time because the hashing executor is saturated.
+ */
+public class PasswordHashingOverloadedException extends RuntimeException {
+
+    public PasswordHashingOverloadedException(String message) {
+        super(message);
+    }
+
+}
@@ -1,26 +1,142 @@
 package fr.corentin.javatheque.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Hashes and verifies passwords with BCrypt on a dedicated executor sized to a share of the cores,
+ * so a burst of logins cannot take every core and request thread. The queue is bounded and callers
+ * wait at most max-wait: beyond that they get a PasswordHashingOverloadedException right away.
+ */
 @Service
 public class PasswordService {
     
+    private static final int BCRYPT_STRENGTH = 12;
+    
     private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Duration maxWait;
+    
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public PasswordService(
+            @Value("${password.hashing.threads:0}") int threads,
+            @Value("${password.hashing.queue-capacity:32}") int queueCapacity,
+            @Value("${password.hashing.max-wait:2s}") Duration maxWait,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this(new BCryptPasswordEncoder(BCRYPT_STRENGTH),
+                threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                queueCapacity, maxWait, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
     
-    public PasswordService() {
-        this.passwordEncoder = new BCryptPasswordEncoder(12);
+    PasswordService(PasswordEncoder passwordEncoder, int threads, int queueCapacity, Duration maxWait,
+                    MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.maxWait = maxWait;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashing tasks waiting for a thread")
+                .register(meterRegistry);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
     }
 
     public String encryptPassword(String password) {
-        return passwordEncoder.encode(password);
+        return submit("encode", () -> passwordEncoder.encode(password));
     }
 
     public boolean verifyPassword(String password, String encryptedPassword) {
-        return passwordEncoder.matches(password, encryptedPassword);
+        return submit("verify", () -> passwordEncoder.matches(password, encryptedPassword));
+    }
+    
+    private <T> T submit(String operation, Callable<T> hashing) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                timer("password.hashing.queue.wait", operation).record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return hashing.call();
+                } finally {
+                    timer("password.hashing.duration", operation).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw reject("queue_full");
+        }
+        
+        try {
+            return future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Not hashed yet: drop it and free its queue slot, the caller is answered already
+            future.cancel(true);
+            if (future instanceof Runnable task) {
+                executor.remove(task);
+            }
+            throw reject("timeout");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw reject("interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    private PasswordHashingOverloadedException reject(String reason) {
+        counters.computeIfAbsent(reason, key -> Counter.builder("password.hashing.rejected")
+                        .description("Password hashing requests rejected because the executor is saturated")
+                        .tag("reason", key)
+                        .register(meterRegistry))
+                .increment();
+        return new PasswordHashingOverloadedException("Password hashing rejected: " + reason.replace('_', ' '));
+    }
+    
+    private Timer timer(String name, String operation) {
+        return timers.computeIfAbsent(name + ':' + operation, key -> Timer.builder(name)
+                .tag("operation", operation)
+                .register(meterRegistry));
     }
     
 }
-
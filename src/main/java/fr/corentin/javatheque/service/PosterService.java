@@ -0,0 +1,452 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local copies of the TMDB posters, so library pages load them from us rather than from the TMDB CDN.
+ * A poster is fetched once from TMDB at the source size, then resized to the thumbnail widths on a bounded
+ * background pool. Files are kept under directory/size/file within max-size, the least recently used
+ * are deleted when it is exceeded. Posters TMDB does not have are remembered for not-found-ttl.
+ */
+@Slf4j
+@Service
+public class PosterService {
+
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,100}\\.(jpg|jpeg|png)");
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * Access times are written back to the files at most this often, for the LRU order to survive restarts.
+     */
+    private static final long ACCESS_PERSIST_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Files served this recently are never deleted by the clean up: Tomcat sendfile opens them after the request
+     * returned, and a deleted file would end the response early.
+     */
+    private static final long RECENT_ACCESS_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_NOT_FOUND = 10_000;
+
+    private final RestClient restClient;
+    private final Path directory;
+    private final String sourceSize;
+    private final Map<String, Integer> thumbnailWidths = new LinkedHashMap<>();
+    private final long maxBytes;
+    private final Duration thumbnailWait;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<Path, Entry> files = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
+    private final Map<String, CompletableFuture<Path>> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> notFound;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PosterService(
+            RestClient.Builder restClientBuilder,
+            @Value("${poster.source-url:https://image.tmdb.org/t/p}") String sourceUrl,
+            @Value("${poster.source-size:w780}") String sourceSize,
+            @Value("${poster.thumbnail.widths:185,342,500}") List<Integer> thumbnailWidths,
+            @Value("${poster.cache.directory:data/posters}") Path directory,
+            @Value("${poster.cache.max-size:512MB}") DataSize maxSize,
+            @Value("${poster.thumbnail.threads:2}") int threads,
+            @Value("${poster.thumbnail.queue-capacity:200}") int queueCapacity,
+            @Value("${poster.thumbnail.max-wait:2s}") Duration thumbnailWait,
+            @Value("${poster.not-found-ttl:10m}") Duration notFoundTtl,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this(restClientBuilder.clone().baseUrl(sourceUrl).build(), sourceSize, thumbnailWidths, directory,
+                maxSize.toBytes(), threads, queueCapacity, thumbnailWait, notFoundTtl,
+                meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    PosterService(RestClient restClient, String sourceSize, List<Integer> thumbnailWidths, Path directory,
+                  long maxBytes, int threads, int queueCapacity, Duration thumbnailWait, Duration notFoundTtl,
+                  MeterRegistry meterRegistry) {
+        this.restClient = restClient;
+        this.sourceSize = sourceSize;
+        for (Integer width : thumbnailWidths) {
+            this.thumbnailWidths.put("w" + width, width);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.thumbnailWait = thumbnailWait;
+        this.notFound = Caffeine.newBuilder()
+                .maximumSize(MAX_NOT_FOUND)
+                .expireAfterWrite(notFoundTtl)
+                .build();
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "poster-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open poster cache " + directory, e);
+        }
+
+        Gauge.builder("posters.cache.size", usedBytes, AtomicLong::get)
+                .description("Bytes of posters kept on disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The source size and the thumbnail sizes (w185...) are served.
+     */
+    public boolean isSupportedSize(String size) {
+        return sourceSize.equals(size) || thumbnailWidths.containsKey(size);
+    }
+
+    /**
+     * Poster file at the given size, fetched and resized on first use. Empty when TMDB has no such poster.
+     * When the thumbnail is not ready within poster.thumbnail.max-wait, the source size is returned instead
+     * (not exact, it should not be cached for long).
+     *
+     * @throws IllegalArgumentException for an unsupported size or file name
+     * @throws TMDBUnavailableException when the poster could not be fetched from TMDB
+     */
+    public Optional<Poster> getPoster(String size, String fileName) {
+        if (!isSupportedSize(size) || !FILE_NAME.matcher(fileName).matches()) {
+            throw new IllegalArgumentException("Unknown poster " + size + "/" + fileName);
+        }
+
+        Path thumbnail = directory.resolve(size).resolve(fileName);
+        if (touch(thumbnail)) {
+            count("hit");
+            return Optional.of(new Poster(thumbnail, true));
+        }
+        Path source = source(fileName);
+        if (source == null) {
+            return Optional.empty();
+        }
+        if (size.equals(sourceSize)) {
+            return Optional.of(new Poster(source, true));
+        }
+
+        try {
+            return Optional.of(new Poster(thumbnail(size, fileName, source).get(thumbnailWait.toMillis(),
+                    TimeUnit.MILLISECONDS), true));
+        } catch (TimeoutException e) {
+            count("fallback");
+        } catch (ExecutionException e) {
+            log.warn("Could not resize poster {} to {}", fileName, size, e.getCause());
+            count("fallback");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.of(new Poster(source, false));
+    }
+
+    /**
+     * Poster at the source size, downloaded by the first caller while the others wait for it.
+     * Null when TMDB answered 404, the answer is kept for not-found-ttl so unknown names do not reach TMDB again.
+     */
+    private Path source(String fileName) {
+        Path file = directory.resolve(sourceSize).resolve(fileName);
+        if (touch(file)) {
+            return file;
+        }
+        if (notFound.getIfPresent(fileName) != null) {
+            count("not_found");
+            return null;
+        }
+
+        String key = sourceSize + '/' + fileName;
+        CompletableFuture<Path> promise = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = pending.putIfAbsent(key, promise);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            Path downloaded = download(fileName, file);
+            promise.complete(downloaded);
+            if (downloaded == null) {
+                notFound.put(fileName, Boolean.TRUE);
+            } else {
+                thumbnailWidths.keySet().forEach(size -> thumbnail(size, fileName, downloaded));
+            }
+            return downloaded;
+        } catch (RuntimeException e) {
+            promise.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(key, promise);
+        }
+    }
+
+    private Path download(String fileName, Path target) {
+        try {
+            return restClient.get()
+                    .uri("/{size}/{file}", sourceSize, fileName)
+                    .exchange((request, response) -> {
+                        if (response.getStatusCode().value() == 404) {
+                            count("not_found");
+                            return null;
+                        }
+                        if (!response.getStatusCode().is2xxSuccessful()) {
+                            throw new TMDBUnavailableException("TMDB answered " + response.getStatusCode().value()
+                                    + " for poster " + fileName);
+                        }
+                        Path temp = Files.createTempFile(target.getParent(), fileName, TEMP_SUFFIX);
+                        try (InputStream body = response.getBody()) {
+                            Files.copy(body, temp, StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            Files.deleteIfExists(temp);
+                            throw e;
+                        }
+                        count("fetched");
+                        return store(temp, target);
+                    });
+        } catch (RestClientException e) {
+            throw new TMDBUnavailableException("Could not fetch poster " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Thumbnail being generated, or queued for generation on the background pool.
+     */
+    private CompletableFuture<Path> thumbnail(String size, String fileName, Path source) {
+        Path target = directory.resolve(size).resolve(fileName);
+        if (files.containsKey(target)) {
+            return CompletableFuture.completedFuture(target);
+        }
+
+        String key = size + '/' + fileName;
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> inFlight = pending.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(resize(source, target, thumbnailWidths.get(size)));
+                    count("resized");
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    pending.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool saturated, the source is served meanwhile and a later request queues it again
+            future.completeExceptionally(e);
+            pending.remove(key, future);
+        }
+        return future;
+    }
+
+    private Path resize(Path source, Path target, int width) throws IOException {
+        BufferedImage image = ImageIO.read(source.toFile());
+        if (image == null) {
+            throw new IOException("Unsupported image format " + source);
+        }
+        boolean png = target.getFileName().toString().endsWith(".png");
+        // Halving steps then a last bilinear step, close to area averaging at a fraction of its cost
+        while (image.getWidth() > width) {
+            int stepWidth = Math.max(width, image.getWidth() / 2);
+            int stepHeight = Math.max(1, Math.round(image.getHeight() * (float) stepWidth / image.getWidth()));
+            BufferedImage step = new BufferedImage(stepWidth, stepHeight,
+                    png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(image, 0, 0, stepWidth, stepHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            image = step;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_SUFFIX);
+        if (!ImageIO.write(image, png ? "png" : "jpg", temp.toFile())) {
+            Files.deleteIfExists(temp);
+            throw new IOException("No image writer for " + target);
+        }
+        return store(temp, target);
+    }
+
+    private Path store(Path temp, Path target) throws IOException {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        long bytes = Files.size(target);
+        Entry previous = files.put(target, new Entry(bytes, System.currentTimeMillis()));
+        usedBytes.addAndGet(bytes - (previous != null ? previous.bytes : 0));
+        if (usedBytes.get() > maxBytes && cleanupScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::cleanUp);
+            } catch (RejectedExecutionException e) {
+                cleanupScheduled.set(false);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Deletes the least recently used files until 90% of max-size, sparing the files served in the last minute
+     * even if the cache stays over max-size meanwhile.
+     */
+    private void cleanUp() {
+        try {
+            long goal = maxBytes / 10 * 9;
+            long recent = System.currentTimeMillis() - RECENT_ACCESS_MILLIS;
+            List<Map.Entry<Path, Entry>> entries = new ArrayList<>(files.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            for (Map.Entry<Path, Entry> entry : entries) {
+                // Sorted, every file left was served recently
+                if (usedBytes.get() <= goal || entry.getValue().lastAccess > recent) {
+                    break;
+                }
+                if (files.remove(entry.getKey(), entry.getValue())) {
+                    usedBytes.addAndGet(-entry.getValue().bytes);
+                    try {
+                        Files.deleteIfExists(entry.getKey());
+                    } catch (IOException e) {
+                        log.warn("Could not delete poster {}", entry.getKey(), e);
+                    }
+                }
+            }
+        } finally {
+            cleanupScheduled.set(false);
+        }
+    }
+
+    private boolean touch(Path file) {
+        Entry entry = files.get(file);
+        if (entry == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - entry.lastAccess > ACCESS_PERSIST_MILLIS) {
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            } catch (IOException e) {
+                // Deleted behind our back
+                files.remove(file, entry);
+                usedBytes.addAndGet(-entry.bytes);
+                return false;
+            }
+        }
+        entry.lastAccess = now;
+        return true;
+    }
+
+    /**
+     * Indexes the files left by a previous run, their modification time standing for their last access.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        Files.createDirectories(directory.resolve(sourceSize));
+        for (String size : thumbnailWidths.keySet()) {
+            Files.createDirectories(directory.resolve(size));
+        }
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                files.put(path, new Entry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                usedBytes.addAndGet(attributes.size());
+            }
+        }
+    }
+
+    private void count(String result) {
+        counters.computeIfAbsent(result, key -> Counter.builder("posters.requests")
+                        .description("Poster lookups by result (hit, fetched, not_found, resized, fallback)")
+                        .tag("result", key)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Poster {
+        private final Path file;
+        /**
+         * False when the source size stands in for a thumbnail that is not ready yet.
+         */
+        private final boolean exact;
+    }
+
+    private static final class Entry {
+        private final long bytes;
+        private volatile long lastAccess;
+
+        private Entry(long bytes, long lastAccess) {
+            this.bytes = bytes;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
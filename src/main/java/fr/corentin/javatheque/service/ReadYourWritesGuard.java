@@ -0,0 +1,99 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Keeps the reads of a user on the primary database for a while after they wrote, so they see their own changes
+ * even when the replicas lag behind (see DataSourceConfig).
+ * Writes are recorded per user id and library id, requests of a recent writer are flagged for the current thread
+ * and read-only transactions then use the primary instead of a replica.
+ * The records are kept in the memory of this instance; a writer whose next request reaches another instance is
+ * recognised by the cookie set by ReadYourWritesInterceptor instead.
+ */
+@Component
+public class ReadYourWritesGuard {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final Cache<String, Boolean> recentWrites;
+    private final Duration window;
+
+    @Autowired
+    public ReadYourWritesGuard(
+            @Value("${datasource.replica.read-your-writes-window:5s}") Duration window,
+            @Value("${datasource.replica.read-your-writes-max-size:100000}") long maxSize) {
+        this(window, maxSize, Ticker.systemTicker());
+    }
+
+    ReadYourWritesGuard(Duration window, long maxSize, Ticker ticker) {
+        this.window = window;
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(window)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * True while the current thread serves a recent writer, read-only transactions must then use the primary.
+     */
+    public static boolean isPrimaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+    }
+
+    /**
+     * Ends the routing decision of the current thread, once its request is done.
+     */
+    public static void reset() {
+        PRIMARY_REQUIRED.remove();
+    }
+
+    /**
+     * How long the reads of a writer stay on the primary.
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    /**
+     * Routes the reads of the current thread to the primary, for a writer known from its request
+     * (see ReadYourWritesInterceptor).
+     */
+    public void requirePrimary() {
+        PRIMARY_REQUIRED.set(Boolean.TRUE);
+    }
+
+    /**
+     * Records a write by a user or to a library, keys are user ids or library ids.
+     */
+    public void recordWrite(String key) {
+        recentWrites.put(key, Boolean.TRUE);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onFilmEvent(FilmEvent event) {
+        recordWrite(event.getLibraryId());
+    }
+
+    /**
+     * Routes the reads of the current thread to the primary when one of the keys was written recently.
+     */
+    public boolean requirePrimaryIfRecentlyWritten(String userId, String libraryId) {
+        boolean recent = (userId != null && recentWrites.getIfPresent(userId) != null)
+                || (libraryId != null && recentWrites.getIfPresent(libraryId) != null);
+        if (recent) {
+            requirePrimary();
+        }
+        return recent;
+    }
+
+}
@@ -0,0 +1,110 @@
+package fr.corentin.javatheque.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache on top of the Caffeine async caches where concurrent callers of a same key
+ * share a single in-flight load: the first caller runs the loader, the others wait for its result
+ * (or its error) instead of sending their own request.
+ * Loads completing with null are not cached.
+ */
+@Component
+public class SingleFlightCache {
+
+    private final CacheManager cacheManager;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SingleFlightCache(CacheManager cacheManager, ObjectProvider<MeterRegistry> meterRegistry) {
+        this(cacheManager, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    SingleFlightCache(CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T get(String cacheName, Object key, Supplier<T> loader) {
+        return get(cacheName, key, loader, value -> true);
+    }
+
+    /**
+     * Same as get, but a loaded value failing the retain predicate is only handed to the callers
+     * already waiting for it and then removed from the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String cacheName, Object key, Supplier<T> loader, Predicate<? super T> retain) {
+        CompletableFuture<Object> promise = new CompletableFuture<>();
+        CompletableFuture<Object> future = asyncCache(cacheName).get(key, (k, executor) -> promise);
+
+        if (future == promise) {
+            // This caller owns the load, it runs on its own thread
+            count(cacheName, "miss");
+            try {
+                T value = loader.get();
+                promise.complete(value);
+                if (value != null && !retain.test(value)) {
+                    asyncCache(cacheName).asMap().remove(key, promise);
+                }
+                return value;
+            } catch (Throwable e) {
+                // Errors too (StackOverflowError while parsing...): a promise left pending would block the key forever
+                promise.completeExceptionally(e);
+                asyncCache(cacheName).asMap().remove(key, promise);
+                throw e;
+            }
+        }
+
+        count(cacheName, future.isDone() ? "hit" : "coalesced");
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void evict(String cacheName, Object key) {
+        asyncCache(cacheName).synchronous().invalidate(key);
+    }
+
+    private AsyncCache<Object, Object> asyncCache(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (!(cache instanceof CaffeineCache caffeineCache)) {
+            throw new IllegalStateException("No Caffeine cache named " + cacheName);
+        }
+        return caffeineCache.getAsyncCache();
+    }
+
+    private void count(String cacheName, String result) {
+        counters.computeIfAbsent(cacheName + ':' + result, name -> Counter.builder("cache.single.flight")
+                        .description("Lookups of the single-flight caches by result (hit, miss, coalesced)")
+                        .tag("cache", cacheName)
+                        .tag("result", result)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+}
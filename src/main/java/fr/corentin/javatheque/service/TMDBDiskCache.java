@@ -0,0 +1,406 @@
+package fr.corentin.javatheque.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Second-tier TMDB cache on local disk, so a restart does not start from an empty cache.
+ * Values are appended to segment files (crc, expiry, key and value lengths, key, value) and located through an
+ * in-memory index rebuilt from the segments on startup. A torn record at the end of a segment is truncated away.
+ * Expired entries are still served as stale copies while TMDB is unavailable, until their stale TTL ends.
+ * Compaction drops entries past their stale TTL, rewrites mostly dead segments and evicts the oldest ones above the size limit.
+ */
+@Slf4j
+@Service
+public class TMDBDiskCache {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 4 + 8 + 4 + 4;
+    private static final double MIN_LIVE_RATIO = 0.5;
+
+    private final Path directory;
+    private final Duration ttl;
+    private final Duration staleTtl;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final Clock clock;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile boolean enabled;
+    private Segment active;
+
+    @Autowired
+    public TMDBDiskCache(
+            @Value("${tmdb.cache.disk.enabled:true}") boolean enabled,
+            @Value("${tmdb.cache.disk.directory:data/tmdb-cache}") Path directory,
+            @Value("${tmdb.cache.disk.ttl:7d}") Duration ttl,
+            @Value("${tmdb.cache.disk.stale-ttl:30d}") Duration staleTtl,
+            @Value("${tmdb.cache.disk.segment-size:16MB}") DataSize segmentSize,
+            @Value("${tmdb.cache.disk.max-size:256MB}") DataSize maxSize) {
+        this(enabled ? directory : null, ttl, staleTtl, segmentSize.toBytes(), maxSize.toBytes(), Clock.systemUTC());
+    }
+
+    /**
+     * Opens the cache in the given directory, or a disabled cache when the directory is null.
+     */
+    TMDBDiskCache(Path directory, Duration ttl, Duration staleTtl, long segmentBytes, long maxBytes, Clock clock) {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.staleTtl = staleTtl;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+        if (directory != null) {
+            try {
+                open();
+                enabled = true;
+            } catch (IOException e) {
+                log.warn("TMDB disk cache disabled, cannot open {}", directory, e);
+            }
+        }
+    }
+
+    /**
+     * Value of an entry that has not expired yet.
+     */
+    public String get(String namespace, String key) {
+        return read(namespace, key, false);
+    }
+
+    /**
+     * Value of an entry even if expired, as long as it is within the stale TTL. Used when TMDB is unavailable.
+     */
+    public String getStale(String namespace, String key) {
+        return read(namespace, key, true);
+    }
+
+    public synchronized void put(String namespace, String key, String value) {
+        if (!enabled) {
+            return;
+        }
+        String fullKey = namespace + ':' + key;
+        ByteBuffer record = Record.encode(fullKey, value, clock.millis() + ttl.toMillis());
+        if (record.remaining() > segmentBytes) {
+            return;
+        }
+        try {
+            Entry previous = index.put(fullKey, append(record));
+            if (previous != null) {
+                release(previous);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot write {} to the TMDB disk cache", fullKey, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tmdb.cache.disk.compaction-interval:PT10M}")
+    public synchronized void compact() {
+        if (!enabled) {
+            return;
+        }
+        long now = clock.millis();
+        index.forEach((key, entry) -> {
+            if (isPurgeable(entry, now)) {
+                drop(key, entry);
+            }
+        });
+
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                long live = segment.live.get();
+                if (segment != active && (live == 0 || live < segment.size.get() * MIN_LIVE_RATIO)) {
+                    rewrite(segment);
+                }
+            }
+            evictOverLimit();
+        } catch (IOException e) {
+            log.warn("TMDB disk cache compaction failed", e);
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long diskBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size.get()).sum();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        enabled = false;
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+    }
+
+    private String read(String namespace, String key, boolean allowStale) {
+        if (!enabled) {
+            return null;
+        }
+        String fullKey = namespace + ':' + key;
+        Entry entry = index.get(fullKey);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.millis();
+        if (isPurgeable(entry, now)) {
+            drop(fullKey, entry);
+            return null;
+        }
+        if (!allowStale && entry.expiresAt <= now) {
+            return null;
+        }
+        Segment segment = segments.get(entry.segmentId);
+        if (segment == null) {
+            return null;
+        }
+        try {
+            Record record = Record.decode(read(segment, entry.offset, entry.length));
+            return record != null && record.key.equals(fullKey) ? record.value : null;
+        } catch (IOException e) {
+            // The segment may have been compacted away meanwhile, this is only a cache miss
+            log.debug("Cannot read {} from the TMDB disk cache", fullKey, e);
+            return null;
+        }
+    }
+
+    private boolean isPurgeable(Entry entry, long now) {
+        return entry.expiresAt + staleTtl.toMillis() <= now;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        for (Long id : ids) {
+            recover(openSegment(id));
+        }
+        active = openSegment(ids.isEmpty() ? 1 : ids.get(ids.size() - 1) + 1);
+        log.info("TMDB disk cache opened in {} ({} entries)", directory, index.size());
+    }
+
+    /**
+     * Indexes the records of a segment in order, later records replacing earlier ones.
+     * Stops at the first incomplete or corrupted record and truncates the segment there.
+     */
+    private void recover(Segment segment) throws IOException {
+        long now = clock.millis();
+        long fileSize = segment.channel.size();
+        long position = 0;
+        while (position + HEADER_BYTES <= fileSize) {
+            ByteBuffer header = read(segment, position, HEADER_BYTES);
+            header.position(4);
+            long expiresAt = header.getLong();
+            long length = HEADER_BYTES + (long) header.getInt() + header.getInt();
+            if (length < HEADER_BYTES || length > fileSize - position) {
+                break;
+            }
+            Record record = Record.decode(read(segment, position, (int) length));
+            if (record == null) {
+                break;
+            }
+            if (expiresAt + staleTtl.toMillis() > now) {
+                segment.live.addAndGet(length);
+                Entry previous = index.put(record.key, new Entry(segment.id, position, (int) length, expiresAt));
+                if (previous != null) {
+                    release(previous);
+                }
+            }
+            position += length;
+        }
+        if (position < fileSize) {
+            log.warn("Truncating TMDB disk cache segment {} from {} to {} bytes", segment.path, fileSize, position);
+            segment.channel.truncate(position);
+        }
+        segment.size.set(position);
+    }
+
+    private Entry append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (active.size.get() + length > segmentBytes) {
+            active.channel.force(false);
+            active = openSegment(active.id + 1);
+            evictOverLimit();
+        }
+        long offset = active.size.get();
+        while (record.hasRemaining()) {
+            active.channel.write(record, offset + record.position());
+        }
+        active.size.addAndGet(length);
+        active.live.addAndGet(length);
+        return new Entry(active.id, offset, length, record.getLong(4));
+    }
+
+    /**
+     * Copies the live records of a segment to the active one, then deletes it.
+     */
+    private void rewrite(Segment segment) throws IOException {
+        for (Map.Entry<String, Entry> indexed : index.entrySet()) {
+            if (segments.get(segment.id) != segment) {
+                // Evicted by the size limit while its records were being moved
+                return;
+            }
+            Entry entry = indexed.getValue();
+            if (entry.segmentId == segment.id) {
+                Entry moved = append(read(segment, entry.offset, entry.length));
+                if (!index.replace(indexed.getKey(), entry, moved)) {
+                    release(moved);
+                }
+            }
+        }
+        delete(segment);
+    }
+
+    /**
+     * Deletes the oldest segments until the sealed ones plus a full active segment fit in the size limit.
+     */
+    private void evictOverLimit() {
+        while (diskBytes() - active.size.get() + segmentBytes > maxBytes && segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            index.entrySet().removeIf(indexed -> indexed.getValue().segmentId == oldest.id);
+            delete(oldest);
+        }
+    }
+
+    private void drop(String key, Entry entry) {
+        if (index.remove(key, entry)) {
+            release(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+        Segment segment = segments.get(entry.segmentId);
+        if (segment != null) {
+            segment.live.addAndGet(-entry.length);
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%08d", id) + SEGMENT_SUFFIX);
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, new AtomicLong(channel.size()), new AtomicLong());
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.id);
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Cannot delete TMDB disk cache segment {}", segment.path, e);
+        }
+    }
+
+    private static ByteBuffer read(Segment segment, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (segment.channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + segment.path);
+            }
+        }
+        return buffer.flip();
+    }
+
+    @AllArgsConstructor
+    private static final class Entry {
+        private final long segmentId;
+        private final long offset;
+        private final int length;
+        private final long expiresAt;
+    }
+
+    @AllArgsConstructor
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong size;
+        private final AtomicLong live;
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Cannot close {}", path, e);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Record {
+        private final String key;
+        private final String value;
+
+        static ByteBuffer encode(String key, String value, long expiresAt) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + valueBytes.length);
+            buffer.putInt(0).putLong(expiresAt).putInt(keyBytes.length).putInt(valueBytes.length)
+                    .put(keyBytes).put(valueBytes);
+            buffer.putInt(0, checksum(buffer.array()));
+            return buffer.flip();
+        }
+
+        /**
+         * Decodes a whole record, or returns null when its checksum does not match.
+         */
+        static Record decode(ByteBuffer buffer) {
+            byte[] bytes = buffer.array();
+            if (buffer.getInt(0) != checksum(bytes)) {
+                return null;
+            }
+            int keyLength = buffer.getInt(12);
+            int valueLength = buffer.getInt(16);
+            return new Record(
+                    new String(bytes, HEADER_BYTES, keyLength, StandardCharsets.UTF_8),
+                    new String(bytes, HEADER_BYTES + keyLength, valueLength, StandardCharsets.UTF_8));
+        }
+
+        private static int checksum(byte[] record) {
+            CRC32 crc = new CRC32();
+            crc.update(record, 4, record.length - 4);
+            return (int) crc.getValue();
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+package fr.corentin.javatheque.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Guards every outbound TMDB request: a circuit breaker, a bulkhead capping requests in flight
+ * and a token bucket keeping us under the TMDB rate limit. Calls that cannot get through in time
+ * fail fast with TMDBUnavailableException instead of holding a request thread.
+ */
+@Slf4j
+@Component
+public class TMDBGovernor {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final Duration maxWait;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Semaphore bulkhead;
+    private final TokenBucket tokenBucket;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    @Autowired
+    public TMDBGovernor(
+            @Value("${tmdb.governor.rate-per-second:40}") double ratePerSecond,
+            @Value("${tmdb.governor.max-in-flight:20}") int maxInFlight,
+            @Value("${tmdb.governor.max-wait:2s}") Duration maxWait,
+            @Value("${tmdb.governor.failure-threshold:5}") int failureThreshold,
+            @Value("${tmdb.governor.open-duration:30s}") Duration openDuration,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this(ratePerSecond, maxInFlight, maxWait, failureThreshold, openDuration,
+                meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    TMDBGovernor(double ratePerSecond, int maxInFlight, Duration maxWait, int failureThreshold,
+                 Duration openDuration, MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.bulkhead = new Semaphore(maxInFlight, true);
+        this.tokenBucket = new TokenBucket(ratePerSecond);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("tmdb.governor.state", this, governor -> governor.getState().ordinal())
+                .description("TMDB circuit breaker state (0 closed, 1 half-open, 2 open)")
+                .register(meterRegistry);
+        Gauge.builder("tmdb.governor.in.flight", bulkhead, semaphore -> maxInFlight - semaphore.availablePermits())
+                .description("TMDB requests in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a TMDB request once the governor lets it through, and times it as tmdb.requests{endpoint,outcome}.
+     */
+    public <T> T call(String endpoint, Supplier<T> request) {
+        if (!allowRequest()) {
+            throw reject("circuit_open");
+        }
+        boolean acquired = false;
+        try {
+            acquired = bulkhead.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                throw reject("bulkhead_full");
+            }
+            long waitNanos = tokenBucket.reserve(maxWait.toNanos());
+            if (waitNanos < 0) {
+                throw reject("rate_limited");
+            }
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseProbe();
+            throw reject("interrupted");
+        } catch (TMDBUnavailableException e) {
+            releaseProbe();
+            if (acquired) {
+                bulkhead.release();
+            }
+            throw e;
+        }
+
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = request.get();
+            outcome = "success";
+            onSuccess();
+            return result;
+        } catch (HttpClientErrorException e) {
+            // A 4xx is an answer from a healthy TMDB, except when it asks us to slow down
+            if (e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                outcome = "throttled";
+                onFailure();
+            } else {
+                outcome = "client_error";
+                onSuccess();
+            }
+            throw e;
+        } catch (HttpServerErrorException e) {
+            outcome = "server_error";
+            onFailure();
+            throw e;
+        } catch (RuntimeException e) {
+            onFailure();
+            throw e;
+        } finally {
+            bulkhead.release();
+            timer(endpoint, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration.toNanos()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    private synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDuration.toNanos()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            // Only one probe request checks whether TMDB is back
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("TMDB circuit breaker closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        count("tmdb.governor.calls", "outcome", "success");
+    }
+
+    private synchronized void onFailure() {
+        count("tmdb.governor.calls", "outcome", "failure");
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                log.warn("TMDB circuit breaker opened after {} consecutive failures", consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probeInFlight = false;
+        }
+    }
+
+    private TMDBUnavailableException reject(String reason) {
+        count("tmdb.governor.rejected", "reason", reason);
+        return new TMDBUnavailableException("TMDB request rejected: " + reason.replace('_', ' '));
+    }
+
+    private Timer timer(String endpoint, String outcome) {
+        return timers.computeIfAbsent(endpoint + ':' + outcome, key -> Timer.builder("tmdb.requests")
+                .description("TMDB requests sent, by endpoint and outcome")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                // A handful of fixed buckets rather than a full histogram keeps the series count low
+                .serviceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+                        Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(5))
+                .register(meterRegistry));
+    }
+
+    private void count(String name, String tag, String value) {
+        counters.computeIfAbsent(name + ':' + value, key -> Counter.builder(name)
+                        .tag(tag, value)
+                        .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Token bucket refilled continuously, with a burst of one second worth of tokens.
+     * Callers reserve a token and wait for it, unless the wait would exceed their budget.
+     */
+    static class TokenBucket {
+
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double ratePerSecond) {
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, ratePerSecond);
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        /**
+         * Returns the nanoseconds to wait before using the reserved token, or -1 if that is more than maxWaitNanos.
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+
+            long waitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return waitNanos;
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull parser reading TMDB movie details and credits straight into a TMDBMovieDTO.
+ * No JSON tree is built: unused fields are skipped without being decoded, cast entries past MAX_ACTORS
+ * and crew entries past the first director are skipped whole, and the credits payload is not read
+ * any further once both are known.
+ */
+final class TMDBMovieParser {
+
+    static final int MAX_ACTORS = 10;
+
+    private TMDBMovieParser() {
+    }
+
+    /**
+     * Parses a movie fetched with append_to_response=credits, null when the payload has no credits object.
+     */
+    static TMDBMovieDTO parseMovieWithCredits(int movieId, String json) {
+        Movie movie = new Movie();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            readMovie(reader, movie);
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return movie.hasCredits ? movie.toDto(movieId) : null;
+    }
+
+    /**
+     * Parses the separate details and credits payloads.
+     */
+    static TMDBMovieDTO parseMovie(int movieId, String details, String credits) {
+        Movie movie = new Movie();
+        try (JsonReader detailsReader = new JsonReader(new StringReader(details));
+             JsonReader creditsReader = new JsonReader(new StringReader(credits))) {
+            readMovie(detailsReader, movie);
+            readCredits(creditsReader, movie, false);
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return movie.toDto(movieId);
+    }
+
+    private static void readMovie(JsonReader reader, Movie movie) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title" -> movie.title = nextString(reader);
+                case "overview" -> movie.overview = nextString(reader);
+                case "poster_path" -> movie.posterPath = nextString(reader);
+                case "release_date" -> movie.releaseDate = nextString(reader);
+                case "credits" -> {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        readCredits(reader, movie, true);
+                        movie.hasCredits = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads credits until the actors and the director are known, the rest of the object is left unread.
+     * Credits embedded in a movie are read to the end so the reader can go on with the next field.
+     */
+    private static void readCredits(JsonReader reader, Movie movie, boolean embedded) throws IOException {
+        boolean castRead = false;
+        boolean crewRead = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!embedded && castRead && crewRead) {
+                return;
+            }
+            switch (reader.nextName()) {
+                case "cast" -> {
+                    readCast(reader, movie);
+                    castRead = true;
+                }
+                case "crew" -> {
+                    readCrew(reader, movie);
+                    crewRead = true;
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readCast(JsonReader reader, Movie movie) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (movie.actors.size() >= MAX_ACTORS || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String name = null;
+            String department = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name" -> name = nextString(reader);
+                    case "known_for_department" -> department = nextString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (name != null && "Acting".equalsIgnoreCase(department)) {
+                movie.actors.add(name);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static void readCrew(JsonReader reader, Movie movie) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (movie.director != null || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String name = null;
+            boolean director = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name" -> name = nextString(reader);
+                    case "job" -> director = "Director".equals(nextString(reader));
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (director) {
+                movie.director = name;
+            }
+        }
+        reader.endArray();
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static final class Movie {
+        private String title;
+        private String overview;
+        private String posterPath;
+        private String releaseDate;
+        private String director;
+        private final List<String> actors = new ArrayList<>(MAX_ACTORS);
+        private boolean hasCredits;
+
+        TMDBMovieDTO toDto(int movieId) {
+            if (title == null) {
+                throw new JsonSyntaxException("TMDB movie " + movieId + " has no title");
+            }
+            return new TMDBMovieDTO(movieId, title, emptyIfNull(overview), emptyIfNull(posterPath),
+                    emptyIfNull(releaseDate), director, actors);
+        }
+
+        private static String emptyIfNull(String value) {
+            return value == null ? "" : value;
+        }
+    }
+
+}
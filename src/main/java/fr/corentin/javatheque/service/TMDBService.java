@@ -1,44 +1,124 @@
 package fr.corentin.javatheque.service;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
 import fr.corentin.javatheque.model.Film;
 import fr.corentin.javatheque.model.Person;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
+@Slf4j
 @Service
 public class TMDBService {
     
     private final RestClient restClient;
     private final Gson gson;
     private final String apiKey;
+    private final SingleFlightCache cache;
+    private final TMDBDiskCache diskCache;
+    private final TMDBGovernor governor;
+    private final boolean appendCredits;
     
-    private static final int MAX_ACTORS = 10;
+    private static final String SEARCH_CACHE = "tmdbSearches";
+    private static final String MOVIE_CACHE = "tmdbMovies";
     
     public TMDBService(
             @Value("${tmdb.api.key}") String apiKey,
             @Value("${tmdb.api.base-url}") String baseUrl,
-            RestClient.Builder restClientBuilder) {
+            RestClient.Builder restClientBuilder,
+            SingleFlightCache cache,
+            TMDBDiskCache diskCache,
+            TMDBGovernor governor,
+            @Value("${tmdb.api.append-credits:true}") boolean appendCredits) {
         this.apiKey = apiKey;
         this.restClient = restClientBuilder.baseUrl(baseUrl).build();
         this.gson = new Gson();
+        this.cache = cache;
+        this.diskCache = diskCache;
+        this.governor = governor;
+        this.appendCredits = appendCredits;
     }
 
-    @Cacheable(value = "tmdbSearches", key = "#title + '_' + #language + '_' + #page")
     public String searchMovies(String title, String language, int page) {
+        return cached(SEARCH_CACHE, title + "_" + language + "_" + page, String.class,
+                () -> fetchSearch(title, language, page));
+    }
+
+    /**
+     * Parsed movie details and credits, cached as a compact record so cache hits skip the JSON entirely.
+     * Returns null when TMDB could not be reached.
+     */
+    public TMDBMovieDTO getMovie(int movieId, String language) {
+        return cached(MOVIE_CACHE, movieId + "_" + language, TMDBMovieDTO.class, () -> fetchMovie(movieId, language));
+    }
+
+    /**
+     * Looks up the in-memory cache, then the disk cache, and only then TMDB.
+     * When TMDB fails or the governor sheds the request, an expired disk copy is served if there is one;
+     * it is not kept in memory so the next lookup tries TMDB again.
+     */
+    private <T> T cached(String cacheName, String key, Class<T> type, Supplier<T> fetcher) {
+        AtomicBoolean stale = new AtomicBoolean();
+        return cache.get(cacheName, key, () -> {
+            String stored = diskCache.get(cacheName, key);
+            if (stored != null) {
+                return gson.fromJson(stored, type);
+            }
+            T value = fetcher.get();
+            if (value != null) {
+                diskCache.put(cacheName, key, gson.toJson(value));
+                return value;
+            }
+            String expired = diskCache.getStale(cacheName, key);
+            if (expired == null) {
+                return null;
+            }
+            stale.set(true);
+            return gson.fromJson(expired, type);
+        }, value -> !stale.get());
+    }
+
+    private TMDBMovieDTO fetchMovie(int movieId, String language) {
+        if (appendCredits) {
+            String movieWithCredits = fetchMovieWithCredits(movieId, language);
+            TMDBMovieDTO movie = null;
+            if (movieWithCredits != null) {
+                try {
+                    movie = TMDBMovieParser.parseMovieWithCredits(movieId, movieWithCredits);
+                } catch (JsonParseException e) {
+                    log.warn("Malformed TMDB movie {} with credits, trying separate requests", movieId, e);
+                }
+            }
+            if (movie != null) {
+                return movie;
+            }
+        }
+        // Two-call path, also used when the combined request failed, was malformed or came back without credits
+        String movieDetails = fetchMovieDetails(movieId, language);
+        String movieCredits = fetchCreditDetails(movieId, language);
+        if (movieDetails == null || movieCredits == null) {
+            return null;
+        }
         try {
-            String response = restClient.get()
+            return TMDBMovieParser.parseMovie(movieId, movieDetails, movieCredits);
+        } catch (JsonParseException e) {
+            // Handled like an unreachable TMDB, a stale disk copy may still be served
+            log.warn("Malformed TMDB movie {}", movieId, e);
+            return null;
+        }
+    }
+
+    private String fetchSearch(String title, String language, int page) {
+        try {
+            String response = governor.call("search", () -> restClient.get()
                     .uri(uriBuilder -> uriBuilder
                             .path("/search/movie")
                             .queryParam("api_key", apiKey)
@@ -47,7 +127,7 @@ public class TMDBService {
                             .queryParam("page", page)
                             .build())
                     .retrieve()
-                    .body(String.class);
+                    .body(String.class));
             
             return response;
         } catch (Exception e) {
@@ -55,17 +135,16 @@ public class TMDBService {
         }
     }
 
-    @Cacheable(value = "tmdbMovies", key = "#movieId + '_' + #language + '_details'")
-    public String getMovieDetails(int movieId, String language) {
+    private String fetchMovieDetails(int movieId, String language) {
         try {
-            String response = restClient.get()
+            String response = governor.call("movie", () -> restClient.get()
                     .uri(uriBuilder -> uriBuilder
                             .path("/movie/{movieId}")
                             .queryParam("api_key", apiKey)
                             .queryParam("language", language)
                             .build(movieId))
                     .retrieve()
-                    .body(String.class);
+                    .body(String.class));
             
             return response;
         } catch (Exception e) {
@@ -73,17 +152,34 @@ public class TMDBService {
         }
     }
 
-    @Cacheable(value = "tmdbMovies", key = "#movieId + '_' + #language + '_credits'")
-    public String getCreditDetails(int movieId, String language) {
+    private String fetchMovieWithCredits(int movieId, String language) {
         try {
-            String response = restClient.get()
+            String response = governor.call("movie_with_credits", () -> restClient.get()
+                    .uri(uriBuilder -> uriBuilder
+                            .path("/movie/{movieId}")
+                            .queryParam("api_key", apiKey)
+                            .queryParam("language", language)
+                            .queryParam("append_to_response", "credits")
+                            .build(movieId))
+                    .retrieve()
+                    .body(String.class));
+            
+            return response;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String fetchCreditDetails(int movieId, String language) {
+        try {
+            String response = governor.call("credits", () -> restClient.get()
                     .uri(uriBuilder -> uriBuilder
                             .path("/movie/{movieId}/credits")
                             .queryParam("api_key", apiKey)
                             .queryParam("language", language)
                             .build(movieId))
                     .retrieve()
-                    .body(String.class);
+                    .body(String.class));
             
             return response;
         } catch (Exception e) {
@@ -91,22 +187,17 @@ public class TMDBService {
         }
     }
 
+    /**
+     * @throws TMDBUnavailableException when TMDB could not be reached and no copy of the movie is cached
+     */
     public Film getFilmFromTMDB(int tmdbId, String lang, String support) {
+        TMDBMovieDTO movie = getMovie(tmdbId, lang);
+        if (movie == null) {
+            throw new TMDBUnavailableException("TMDB movie " + tmdbId + " is unavailable");
+        }
+        
         try {
-            JsonObject movieDetails = gson.fromJson(getMovieDetails(tmdbId, lang), JsonObject.class);
-            JsonObject movieCredits = gson.fromJson(getCreditDetails(tmdbId, lang), JsonObject.class);
-            
-            String poster = movieDetails.has("poster_path") && !movieDetails.get("poster_path").isJsonNull() 
-                    ? movieDetails.get("poster_path").getAsString() 
-                    : "";
-            String title = movieDetails.get("title").getAsString();
-            String description = movieDetails.has("overview") && !movieDetails.get("overview").isJsonNull()
-                    ? movieDetails.get("overview").getAsString()
-                    : "";
-            String releaseDate = movieDetails.has("release_date") && !movieDetails.get("release_date").isJsonNull()
-                    ? movieDetails.get("release_date").getAsString()
-                    : "";
-            
+            String releaseDate = movie.getReleaseDate();
             String year = "";
             if (!releaseDate.isEmpty() && releaseDate.contains("-")) {
                 year = releaseDate.split("-")[0];
@@ -115,25 +206,21 @@ public class TMDBService {
                 year = "Unknown";
             }
             
-            JsonArray cast = movieCredits.has("cast") ? movieCredits.getAsJsonArray("cast") : new JsonArray();
-            JsonArray crew = movieCredits.has("crew") ? movieCredits.getAsJsonArray("crew") : new JsonArray();
-            
-            Person director = getDirectorFromCredits(crew);
-            List<Person> actors = getActorsFromCredits(cast);
-            
             Film film = new Film();
             film.setId(tmdbId);
-            film.setPoster(poster);
+            film.setPoster(movie.getPosterPath());
             film.setLang(lang);
             film.setSupport(support);
-            film.setTitle(title);
-            film.setDescription(description);
+            film.setTitle(movie.getTitle());
+            film.setDescription(movie.getOverview());
             film.setReleaseDate(releaseDate);
             film.setYear(year);
             film.setRate(0.0f);
             film.setOpinion("No opinion yet");
-            film.setDirector(director);
-            film.setActors(actors);
+            film.setDirector(parsePersonName(movie.getDirector()));
+            film.setActors(movie.getActors().stream()
+                    .map(TMDBService::parsePersonName)
+                    .collect(Collectors.toList()));
             
             return film;
         } catch (Exception e) {
@@ -141,26 +228,10 @@ public class TMDBService {
         }
     }
 
-    private Person getDirectorFromCredits(JsonArray crewArray) {
-        return StreamSupport.stream(crewArray.spliterator(), false)
-                .map(JsonElement::getAsJsonObject)
-                .filter(jsonObject -> jsonObject.has("job") && "Director".equals(jsonObject.get("job").getAsString()))
-                .findFirst()
-                .map(jsonObject -> parsePersonName(jsonObject.get("name").getAsString()))
-                .orElse(new Person("John", "Doe"));
-    }
-
-    private List<Person> getActorsFromCredits(JsonArray castArray) {
-        return StreamSupport.stream(castArray.spliterator(), false)
-                .map(JsonElement::getAsJsonObject)
-                .filter(jsonObject -> jsonObject.has("known_for_department") && 
-                        "Acting".equalsIgnoreCase(jsonObject.get("known_for_department").getAsString()))
-                .limit(MAX_ACTORS)
-                .map(jsonObject -> parsePersonName(jsonObject.get("name").getAsString()))
-                .collect(Collectors.toList());
-    }
-
-    private Person parsePersonName(String fullName) {
+    /**
+     * Splits a TMDB name into first and last name, package-private for the mapping benchmark.
+     */
+    static Person parsePersonName(String fullName) {
         if (fullName == null || fullName.trim().isEmpty()) {
             return new Person("John", "Doe");
         }
@@ -0,0 +1,13 @@
+package fr.corentin.javatheque.service;
+
+/**
+ * Thrown when a TMDB request is shed by the TMDBGovernor (circuit open, too many requests in flight, rate limit)
+ * or TMDB could not be reached.
+ */
+public class TMDBUnavailableException extends RuntimeException {
+
+    public TMDBUnavailableException(String message) {
+        super(message);
+    }
+
+}
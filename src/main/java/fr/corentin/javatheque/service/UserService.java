@@ -5,9 +5,10 @@ import fr.corentin.javatheque.model.Library;
 import fr.corentin.javatheque.model.User;
 import fr.corentin.javatheque.repository.LibraryRepository;
 import fr.corentin.javatheque.repository.UserRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -18,6 +19,7 @@ public class UserService {
     private final UserRepository userRepository;
     private final LibraryRepository libraryRepository;
     private final PasswordService passwordService;
+    private final ReadYourWritesGuard readYourWritesGuard;
 
     @Transactional
     public UserDTO.Response registerUser(UserDTO.Register request) {
@@ -43,11 +45,16 @@ public class UserService {
         // Update user with library reference
         user.setLibrary(library);
         user = userRepository.save(user);
+        // The new user reads their account right away, possibly before it reached the replicas
+        readYourWritesGuard.recordWrite(user.getId());
         
         return mapToUserResponse(user);
     }
     
 
+    /**
+     * Not transactional: the password check must not hold a connection, only the lookup does (see UserRepository).
+     */
     public UserDTO.Response loginUser(UserDTO.Login request) {
         Optional<User> userOpt = userRepository.findByEmail(request.getEmail());
         
@@ -64,6 +71,7 @@ public class UserService {
         return mapToUserResponse(user);
     }
 
+    @Transactional(readOnly = true)
     public UserDTO.Response getUserById(String userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
@@ -71,6 +79,7 @@ public class UserService {
         return mapToUserResponse(user);
     }
 
+    @Transactional(readOnly = true)
     public UserDTO.Response getUserByEmail(String email) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
@@ -79,6 +88,7 @@ public class UserService {
     }
 
     @Transactional
+    @CacheEvict(cacheNames = "libraryIds", key = "#userId")
     public void deleteUser(String userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
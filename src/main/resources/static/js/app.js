@@ -117,7 +117,8 @@ const checkAuth = async () => {
 // Format TMDB poster URL
 const getTMDBPosterUrl = (posterPath, size = 'w500') => {
     if (!posterPath) return '/images/no-poster.jpg';
-    return `https://image.tmdb.org/t/p/${size}${posterPath}`;
+    // Served from the local poster cache, fetched from TMDB on first use
+    return `/api/posters/${size}${posterPath}`;
 };
 
 // Initialize logout button
@@ -17,16 +17,40 @@ document.addEventListener('DOMContentLoaded', async () => {
         userInfo.textContent = `${user.firstname} ${user.lastname}`;
     }
     
-    // Load films
-    const loadFilms = async (searchQuery = '') => {
+    const loadMoreBtn = document.getElementById('load-more-btn');
+    const PAGE_SIZE = 60;
+    let currentQuery = '';
+    let nextCursor = null;
+    
+    const renderFilmCard = (film) => `
+        <div class="film-card" data-film-id="${film.id}">
+            <img src="${getTMDBPosterUrl(film.poster)}" alt="${film.title}" class="film-poster" 
+                 onerror="this.src='/images/no-poster.jpg'">
+            <div class="film-info">
+                <div class="film-title">${film.title}</div>
+                <div class="film-year">${film.year}</div>
+                ${film.rate ? `<div class="film-rate">${film.rate}/10</div>` : ''}
+            </div>
+        </div>
+    `;
+    
+    // Load films, one page at a time (cursor = null loads the first page)
+    const loadFilms = async (searchQuery = '', cursor = null) => {
         showLoading(true);
         try {
-            const url = searchQuery ? `/library/search?search=${encodeURIComponent(searchQuery)}` : '/library';
-            const films = await apiCall(url);
+            const params = new URLSearchParams({ size: PAGE_SIZE });
+            if (searchQuery) params.set('search', searchQuery);
+            if (cursor) params.set('cursor', cursor);
+            const url = `${searchQuery ? '/library/search' : '/library'}?${params}`;
+            const page = await apiCall(url);
+            const films = page ? page.films : [];
             
             showLoading(false);
+            currentQuery = searchQuery;
+            nextCursor = page ? page.next : null;
+            loadMoreBtn.style.display = nextCursor ? 'inline-block' : 'none';
             
-            if (!films || films.length === 0) {
+            if (!cursor && films.length === 0) {
                 filmsGrid.innerHTML = '';
                 filmsGrid.style.display = 'none';
                 emptyState.style.display = 'block';
@@ -36,25 +60,12 @@ document.addEventListener('DOMContentLoaded', async () => {
             emptyState.style.display = 'none';
             filmsGrid.style.display = 'grid';
             
-            filmsGrid.innerHTML = films.map(film => `
-                <div class="film-card" data-film-id="${film.id}">
-                    <img src="${getTMDBPosterUrl(film.poster)}" alt="${film.title}" class="film-poster" 
-                         onerror="this.src='/images/no-poster.jpg'">
-                    <div class="film-info">
-                        <div class="film-title">${film.title}</div>
-                        <div class="film-year">${film.year}</div>
-                        ${film.rate ? `<div class="film-rate">${film.rate}/10</div>` : ''}
-                    </div>
-                </div>
-            `).join('');
-            
-            // Add click handlers
-            document.querySelectorAll('.film-card').forEach(card => {
-                card.addEventListener('click', () => {
-                    const filmId = card.dataset.filmId;
-                    showFilmDetail(filmId);
-                });
-            });
+            const html = films.map(renderFilmCard).join('');
+            if (cursor) {
+                filmsGrid.insertAdjacentHTML('beforeend', html);
+            } else {
+                filmsGrid.innerHTML = html;
+            }
             
         } catch (error) {
             showLoading(false);
@@ -62,6 +73,18 @@ document.addEventListener('DOMContentLoaded', async () => {
         }
     };
     
+    // Click handler for every card, including the ones appended later
+    filmsGrid.addEventListener('click', (e) => {
+        const card = e.target.closest('.film-card');
+        if (card) {
+            showFilmDetail(card.dataset.filmId);
+        }
+    });
+    
+    loadMoreBtn.addEventListener('click', () => {
+        if (nextCursor) loadFilms(currentQuery, nextCursor);
+    });
+    
     // Show film detail in modal
     const showFilmDetail = async (filmId) => {
         try {
@@ -0,0 +1,46 @@
+package fr.corentin.javatheque.configuration;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryCountFilterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueryCountFilter filter = new QueryCountFilter(meterRegistry);
+    private final QueryCountInspector inspector = new QueryCountInspector();
+
+    @Test
+    void statementsAreCountedPerRequestAndEndpoint() throws Exception {
+        inspector.inspect("select 1 from films");
+
+        for (int queries : new int[]{3, 5}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/films/603");
+            filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+                req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/films/{filmId}");
+                for (int i = 0; i < queries; i++) {
+                    inspector.inspect("select * from films where id = ?");
+                }
+            });
+        }
+        filter.doFilter(new MockHttpServletRequest("GET", "/missing"), new MockHttpServletResponse(), (req, res) -> {
+        });
+        inspector.inspect("select 1 from films");
+
+        DistributionSummary films = meterRegistry.get("http.server.requests.queries")
+                .tag("method", "GET")
+                .tag("uri", "/api/films/{filmId}")
+                .summary();
+        assertThat(films.count()).isEqualTo(2);
+        assertThat(films.totalAmount()).isEqualTo(8);
+        assertThat(films.max()).isEqualTo(5);
+        assertThat(meterRegistry.get("http.server.requests.queries").tag("uri", "UNKNOWN").summary().totalAmount())
+                .isZero();
+    }
+
+}
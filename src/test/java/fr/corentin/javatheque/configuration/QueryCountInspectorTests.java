@@ -0,0 +1,41 @@
+package fr.corentin.javatheque.configuration;
+
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.model.LibraryChange;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import fr.corentin.javatheque.service.LibraryChangeService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class QueryCountInspectorTests {
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void jdbcBatchesRunThroughDoWorkAreCounted() {
+        Library library = libraryRepository.save(new Library("query-count-owner"));
+        entityManager.flush();
+
+        QueryCountInspector.start();
+        libraryChangeService.record(library.getId(), LibraryChange.Type.UPSERT, List.of(1, 2, 3));
+
+        assertThat(QueryCountInspector.stop()).isEqualTo(1);
+    }
+
+}
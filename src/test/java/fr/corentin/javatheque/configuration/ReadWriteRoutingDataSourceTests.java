@@ -0,0 +1,90 @@
+package fr.corentin.javatheque.configuration;
+
+import fr.corentin.javatheque.service.ReadYourWritesGuard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing between embedded databases standing for the primary and two replicas, each one holding its own name.
+ */
+class ReadWriteRoutingDataSourceTests {
+
+    private ReadWriteRoutingDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new ReadWriteRoutingDataSource(database("primary"),
+                List.of(database("replica-1"), database("replica-2")));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWritesGuard.reset();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplicasInTurn() {
+        List<String> servedBy = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            servedBy.add(readOnly.execute(status -> databaseName()));
+        }
+
+        assertThat(servedBy).containsExactly("replica-1", "replica-2", "replica-1", "replica-2");
+    }
+
+    @Test
+    void writesAndNonTransactionalQueriesStayOnThePrimary() {
+        assertThat(readWrite.execute(status -> databaseName())).isEqualTo("primary");
+        assertThat(databaseName()).isEqualTo("primary");
+    }
+
+    @Test
+    void recentWritersReadFromThePrimary() {
+        ReadYourWritesGuard guard = new ReadYourWritesGuard(Duration.ofMinutes(1), 100);
+        guard.recordWrite("library-1");
+
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-2", "library-2")).isFalse();
+        assertThat(readOnly.execute(status -> databaseName())).startsWith("replica");
+
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-1", "library-1")).isTrue();
+        assertThat(readOnly.execute(status -> databaseName())).isEqualTo("primary");
+
+        ReadYourWritesGuard.reset();
+        assertThat(readOnly.execute(status -> databaseName())).startsWith("replica");
+    }
+
+    private String databaseName() {
+        return jdbcTemplate.queryForObject("SELECT name FROM routing_target", String.class);
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource database = new DriverManagerDataSource(
+                "jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS routing_target (name VARCHAR(32))");
+        jdbcTemplate.update("DELETE FROM routing_target");
+        jdbcTemplate.update("INSERT INTO routing_target (name) VALUES (?)", name);
+        return database;
+    }
+
+}
@@ -0,0 +1,108 @@
+package fr.corentin.javatheque.controller;
+
+import com.google.gson.JsonParser;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.service.FilmService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LibraryETagTests {
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Autowired
+    private FilmService filmService;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .cookieHandler(new CookieManager())
+            .build();
+
+    @Test
+    void unchangedLibraryIsAnswered304UntilAFilmChanges() throws Exception {
+        HttpResponse<String> registered = client.send(HttpRequest.newBuilder(uri("/api/auth/register"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"lastname\":\"Tag\",\"firstname\":\"E\","
+                                + "\"email\":\"etag@library.test\",\"password\":\"secret123\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        String libraryId = JsonParser.parseString(registered.body()).getAsJsonObject().get("libraryId").getAsString();
+
+        HttpResponse<String> first = get("/api/library", null);
+        String eTag = first.headers().firstValue("ETag").orElseThrow();
+        assertThat(first.statusCode()).isEqualTo(200);
+        assertThat(first.headers().firstValue("Cache-Control")).hasValueSatisfying(value -> assertThat(value)
+                .contains("no-cache").contains("private"));
+
+        HttpResponse<String> unchanged = get("/api/library", eTag);
+        assertThat(unchanged.statusCode()).isEqualTo(304);
+        assertThat(unchanged.body()).isEmpty();
+        assertThat(get("/api/library/search?search=matrix", eTag).statusCode()).isEqualTo(304);
+
+        filmService.persistFilms(IntStream.rangeClosed(1, 20).mapToObj(i -> film(400_000 + i, libraryId)).toList());
+
+        HttpResponse<String> changed = get("/api/library", eTag);
+        assertThat(changed.statusCode()).isEqualTo(200);
+        assertThat(changed.headers().firstValue("ETag")).get().isNotEqualTo(eTag);
+        assertThat(changed.body()).contains("Film 400001");
+
+        HttpResponse<byte[]> gzipped = client.send(HttpRequest.newBuilder(uri("/api/library"))
+                        .header("Accept-Encoding", "gzip")
+                        .GET()
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(gzipped.headers().firstValue("Content-Encoding")).hasValue("gzip");
+        assertThat(gzipped.headers().firstValue("ETag")).get().isNotEqualTo(changed.headers().firstValue("ETag").get());
+        try (GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(gzipped.body()))) {
+            assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(changed.body());
+        }
+        String gzipETag = gzipped.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<String> revalidated = get("/api/library", gzipETag);
+        assertThat(revalidated.statusCode()).isEqualTo(304);
+        assertThat(revalidated.headers().firstValue("ETag")).hasValue(gzipETag);
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static Film film(int id, String libraryId) {
+        Film film = new Film();
+        film.setId(id);
+        film.setLibraryId(libraryId);
+        film.setTitle("Film " + id);
+        film.setYear("2000");
+        film.setRate(0.0f);
+        film.setDirector(new Person("Jane", "Director"));
+        film.setActors(new ArrayList<>(List.of(new Person("First", "Actor"))));
+        return film;
+    }
+
+}
@@ -0,0 +1,133 @@
+package fr.corentin.javatheque.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load test: a login storm saturates password hashing while a user keeps reading their library.
+ * Hashing runs on one thread with a small queue, so most logins are answered 503 right away and the
+ * few request threads are left for the library reads. Their latency is compared with the one measured just
+ * before the storm on the same JVM, rather than with a fixed threshold that would depend on the machine.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=8",
+        "password.hashing.threads=1",
+        "password.hashing.queue-capacity=2",
+        "password.hashing.max-wait=1s"
+})
+class LoginStormTests {
+
+    private static final int ATTACKERS = 32;
+    private static final Duration STORM = Duration.ofSeconds(3);
+    private static final int BASELINE_READS = 50;
+    /**
+     * Generous bounds of the p95 during the storm: a multiple of the baseline p95, and at least the baseline
+     * plus a fixed allowance so a sub-millisecond baseline does not turn scheduling noise into a failure.
+     */
+    private static final int MAX_SLOWDOWN = 5;
+    private static final long MIN_ALLOWANCE_MILLIS = 100;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Test
+    void libraryReadsKeepTheirLatencyDuringALoginStorm() throws Exception {
+        HttpClient user = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(new CookieManager())
+                .build();
+        HttpResponse<String> registered = user.send(post("/api/auth/register",
+                "{\"lastname\":\"Storm\",\"firstname\":\"Reader\",\"email\":\"reader@storm.test\",\"password\":\"secret123\"}"),
+                HttpResponse.BodyHandlers.ofString());
+        assertThat(registered.statusCode()).isEqualTo(201);
+
+        HttpRequest read = HttpRequest.newBuilder(uri("/api/library")).GET().build();
+        for (int i = 0; i < BASELINE_READS; i++) {
+            // Warm-up: class loading, JIT and caches, not measured
+            user.send(read, HttpResponse.BodyHandlers.ofString());
+        }
+        List<Long> baseline = new ArrayList<>();
+        for (int i = 0; i < BASELINE_READS; i++) {
+            baseline.add(timedRead(user, read));
+            Thread.sleep(20);
+        }
+
+        HttpClient attacker = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest login = post("/api/auth/login", "{\"email\":\"reader@storm.test\",\"password\":\"guess\"}");
+        Map<Integer, AtomicInteger> loginStatuses = new ConcurrentHashMap<>();
+        long deadline = System.nanoTime() + STORM.toNanos();
+        ExecutorService storm = Executors.newFixedThreadPool(ATTACKERS);
+        for (int i = 0; i < ATTACKERS; i++) {
+            storm.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    int status = attacker.send(login, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    loginStatuses.computeIfAbsent(status, key -> new AtomicInteger()).incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        List<Long> duringStorm = new ArrayList<>();
+        while (System.nanoTime() < deadline) {
+            duringStorm.add(timedRead(user, read));
+            Thread.sleep(20);
+        }
+        storm.shutdown();
+        assertThat(storm.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        long baselineP95 = p95(baseline);
+        long stormP95 = p95(duringStorm);
+        assertThat(duringStorm).hasSizeGreaterThan(20);
+        assertThat(stormP95)
+                .as("p95 library read latency (µs) during the storm, %d µs before it", baselineP95)
+                .isLessThanOrEqualTo(Math.max(baselineP95 * MAX_SLOWDOWN,
+                        baselineP95 + TimeUnit.MILLISECONDS.toMicros(MIN_ALLOWANCE_MILLIS)));
+        assertThat(loginStatuses).containsKeys(401, 503);
+    }
+
+    /**
+     * Latency of a library read in microseconds, the read must succeed.
+     */
+    private static long timedRead(HttpClient user, HttpRequest read) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response = user.send(read, HttpResponse.BodyHandlers.ofString());
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        assertThat(response.statusCode()).isEqualTo(200);
+        return micros;
+    }
+
+    private static long p95(List<Long> latencies) {
+        List<Long> sorted = latencies.stream().sorted().toList();
+        return sorted.get((int) Math.ceil(sorted.size() * 0.95) - 1);
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+}
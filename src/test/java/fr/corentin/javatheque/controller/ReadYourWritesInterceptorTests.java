@@ -0,0 +1,64 @@
+package fr.corentin.javatheque.controller;
+
+import fr.corentin.javatheque.service.ReadYourWritesGuard;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesInterceptorTests {
+
+    private final ReadYourWritesGuard guard = new ReadYourWritesGuard(Duration.ofSeconds(5), 100);
+    private final ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor(guard);
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWritesGuard.reset();
+    }
+
+    @Test
+    void writerIsRecognisedByItsCookieOnAnyInstance() {
+        MockHttpServletResponse written = new MockHttpServletResponse();
+        interceptor.preHandle(new MockHttpServletRequest("POST", "/api/films"), written, null);
+        assertThat(written.getHeader(HttpHeaders.SET_COOKIE))
+                .startsWith(ReadYourWritesInterceptor.RECENT_WRITE_COOKIE + "=1")
+                .contains("Max-Age=5");
+        ReadYourWritesGuard.reset();
+
+        // Another instance, whose guard never saw the write
+        ReadYourWritesInterceptor otherInstance = new ReadYourWritesInterceptor(
+                new ReadYourWritesGuard(Duration.ofSeconds(5), 100));
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/api/library");
+        read.setCookies(new Cookie(ReadYourWritesInterceptor.RECENT_WRITE_COOKIE, "1"));
+        otherInstance.preHandle(read, new MockHttpServletResponse(), null);
+
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isTrue();
+    }
+
+    @Test
+    void asyncRequestsDoNotLeaveTheirDecisionOnTheThread() {
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/api/films/jobs/1");
+        read.setCookies(new Cookie(ReadYourWritesInterceptor.RECENT_WRITE_COOKIE, "1"));
+        interceptor.preHandle(read, new MockHttpServletResponse(), null);
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isTrue();
+
+        interceptor.afterConcurrentHandlingStarted(read, new MockHttpServletResponse(), null);
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isFalse();
+    }
+
+    @Test
+    void decisionOfAPreviousRequestIsNotInherited() {
+        guard.requirePrimary();
+
+        interceptor.preHandle(new MockHttpServletRequest("GET", "/api/library"), new MockHttpServletResponse(), null);
+
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isFalse();
+    }
+
+}
@@ -0,0 +1,61 @@
+package fr.corentin.javatheque.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stateless mode: the token returned at login authenticates requests without any server-side session.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "auth.mode=token",
+        "auth.token.keys=test:a2tra2tra2tra2tra2tra2tra2tra2tra2tra2tra2s="
+})
+class TokenAuthTests {
+
+    @Value("${local.server.port}")
+    private int port;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    void tokenFromRegistrationAuthenticatesWithoutSession() throws Exception {
+        HttpResponse<String> registered = client.send(HttpRequest.newBuilder(uri("/api/auth/register"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"lastname\":\"Token\",\"firstname\":\"Holder\","
+                                + "\"email\":\"holder@token.test\",\"password\":\"secret123\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(registered.statusCode()).isEqualTo(201);
+        String token = registered.headers().firstValue(AuthController.TOKEN_HEADER).orElseThrow();
+        assertThat(registered.headers().allValues("Set-Cookie"))
+                .anySatisfy(cookie -> assertThat(cookie).startsWith(SessionUser.TOKEN_COOKIE + "=" + token))
+                .noneSatisfy(cookie -> assertThat(cookie).startsWith("JSESSIONID"));
+
+        assertThat(get("/api/library", "Bearer " + token).statusCode()).isEqualTo(200);
+        assertThat(get("/api/auth/me", "Bearer " + token).body()).contains("holder@token.test");
+        assertThat(get("/api/library", null).statusCode()).isEqualTo(401);
+        assertThat(get("/api/library", "Bearer " + token.substring(0, token.length() - 2)).statusCode()).isEqualTo(401);
+    }
+
+    private HttpResponse<String> get(String path, String authorization) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path)).GET();
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+}
@@ -0,0 +1,79 @@
+package fr.corentin.javatheque.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuthTokenServiceTests {
+
+    private static final String NEW_KEY = "2026-10:a2tra2tra2tra2tra2tra2tra2tra2tra2tra2tra2s=";
+    private static final String OLD_KEY = "2026-04:b2xkLWtleS1vbGQta2V5LW9sZC1rZXktb2xkLWtleS0=";
+    private static final Instant NOW = Instant.parse("2026-10-18T10:00:00Z");
+    private static final Duration TTL = Duration.ofHours(12);
+
+    private final AuthTokenService tokens = service(List.of(NEW_KEY, OLD_KEY), NOW);
+
+    @Test
+    void issuedTokenCarriesTheUserAndTheirLibrary() {
+        String token = tokens.issue("user-1", "library-1");
+
+        assertThat(token).startsWith("2026-10.");
+        assertThat(tokens.verify(token)).get().satisfies(claims -> {
+            assertThat(claims.getUserId()).isEqualTo("user-1");
+            assertThat(claims.getLibraryId()).isEqualTo("library-1");
+            assertThat(claims.getExpiresAt()).isEqualTo(NOW.plus(TTL));
+        });
+        assertThat(tokens.verify(tokens.issue("user-2", null))).get()
+                .satisfies(claims -> assertThat(claims.getLibraryId()).isNull());
+    }
+
+    @Test
+    void tamperedOrMalformedTokensAreRejected() {
+        String token = tokens.issue("user-1", "library-1");
+        String[] parts = token.split("\\.");
+        String forged = parts[0] + '.' + service(List.of(NEW_KEY), NOW).issue("admin", "library-2").split("\\.")[1]
+                + '.' + parts[2];
+
+        assertThat(tokens.verify(forged)).isEmpty();
+        assertThat(tokens.verify(token.substring(0, token.length() - 2))).isEmpty();
+        assertThat(tokens.verify("unknown." + parts[1] + '.' + parts[2])).isEmpty();
+        assertThat(tokens.verify("no-dots")).isEmpty();
+        assertThat(tokens.verify("2026-10.!!.!!")).isEmpty();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String token = tokens.issue("user-1", "library-1");
+
+        assertThat(service(List.of(NEW_KEY), NOW.plus(TTL).minusSeconds(1)).verify(token)).isPresent();
+        assertThat(service(List.of(NEW_KEY), NOW.plus(TTL)).verify(token)).isEmpty();
+    }
+
+    @Test
+    void rotatedKeysKeepVerifyingUntilTheyAreDropped() {
+        String signedWithOldKey = service(List.of(OLD_KEY), NOW).issue("user-1", "library-1");
+
+        assertThat(tokens.verify(signedWithOldKey)).isPresent();
+        assertThat(service(List.of(NEW_KEY), NOW).verify(signedWithOldKey)).isEmpty();
+    }
+
+    @Test
+    void tokenModeRequiresAStrongKey() {
+        assertThatThrownBy(() -> new AuthTokenService(true, List.of(), TTL, Clock.systemUTC()))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new AuthTokenService(true, List.of("short:c2hvcnQ="), TTL, Clock.systemUTC()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static AuthTokenService service(List<String> keys, Instant now) {
+        return new AuthTokenService(true, keys, TTL, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+}
@@ -0,0 +1,306 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.repository.FilmRepository;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+class CollectionImportServiceTests {
+
+    private static final String LIBRARY_ID = "import-library";
+    private static final int EXISTING_TMDB_ID = 550;
+    private static final int FLAKY_TMDB_ID = 11;
+    private static final int CONCURRENT_TMDB_ID = 77;
+
+    private final Gson gson = new Gson();
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicLong persisted = new AtomicLong();
+    private final List<Integer> persistedIds = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean addedConcurrently = new AtomicBoolean();
+
+    private ValidatorFactory validatorFactory;
+    private CollectionImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        FilmRepository filmRepository = mock(FilmRepository.class, withSettings().stubOnly());
+        FilmRepository.LibraryView existing = mock(FilmRepository.LibraryView.class, withSettings().stubOnly());
+        when(existing.getId()).thenReturn(EXISTING_TMDB_ID);
+        when(existing.getLibraryId()).thenReturn(LIBRARY_ID);
+        // Added by someone else once the import tries to insert it, after its duplicate check
+        FilmRepository.LibraryView concurrent = mock(FilmRepository.LibraryView.class, withSettings().stubOnly());
+        when(concurrent.getId()).thenReturn(CONCURRENT_TMDB_ID);
+        when(concurrent.getLibraryId()).thenReturn(LIBRARY_ID);
+        when(filmRepository.findLibraryIdsByIdIn(anyCollection())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            List<FilmRepository.LibraryView> views = new ArrayList<>();
+            if (ids.contains(EXISTING_TMDB_ID)) {
+                views.add(existing);
+            }
+            if (addedConcurrently.get() && ids.contains(CONCURRENT_TMDB_ID)) {
+                views.add(concurrent);
+            }
+            return views;
+        });
+
+        TMDBService tmdbService = mock(TMDBService.class, withSettings().stubOnly());
+        when(tmdbService.searchMovies(anyString(), anyString(), anyInt()))
+                .thenReturn("{\"results\":[]}");
+        when(tmdbService.searchMovies(eq("The Matrix"), anyString(), anyInt()))
+                .thenReturn("{\"results\":[{\"id\":624860,\"release_date\":\"2021-12-16\"},"
+                        + "{\"id\":603,\"release_date\":\"1999-03-31\"}]}");
+        when(tmdbService.getFilmFromTMDB(anyInt(), anyString(), anyString()))
+                .thenAnswer(invocation -> film(invocation.getArgument(0), invocation.getArgument(2)));
+        // Fails the first time only
+        when(tmdbService.getFilmFromTMDB(eq(FLAKY_TMDB_ID), anyString(), anyString()))
+                .thenThrow(new TMDBUnavailableException("TMDB timed out"))
+                .thenAnswer(invocation -> film(invocation.getArgument(0), invocation.getArgument(2)));
+
+        FilmService filmService = mock(FilmService.class, withSettings().stubOnly());
+        when(filmService.persistFilms(anyList())).thenAnswer(invocation -> {
+            List<Film> films = invocation.getArgument(0);
+            assertThat(films).hasSizeLessThanOrEqualTo(FilmService.PERSIST_BATCH_SIZE)
+                    .allSatisfy(film -> assertThat(film.getLibraryId()).isEqualTo(LIBRARY_ID));
+            if (films.stream().anyMatch(film -> film.getId() == CONCURRENT_TMDB_ID)) {
+                addedConcurrently.set(true);
+                throw new DataIntegrityViolationException("Film already exists");
+            }
+            batches.incrementAndGet();
+            persisted.addAndGet(films.size());
+            if (films.size() < 10) {
+                films.forEach(film -> persistedIds.add(film.getId()));
+            }
+            return List.of();
+        });
+
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        importService = new CollectionImportService(filmService, filmRepository, tmdbService,
+                validatorFactory.getValidator(), 16, 2, 4, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+        validatorFactory.close();
+    }
+
+    @Test
+    void csvImportReportsDuplicatesAndErrorsPerLine() throws Exception {
+        String csv = "\uFEFFTMDB id;Title;Year;Rate;Support\n"
+                + "603;;;8,5;\n"
+                + ";The Matrix;1999;;4K UHD\n"
+                + "550;Fight Club;;;\n"
+                + "\n"
+                + "680;;;eleven;\n"
+                + ";Unknown film;;;\n"
+                + "13;;;12;\n"
+                + ";;;;\n";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.CSV, stream(csv), "en-US", "DVD", output);
+
+        assertThat(progress.isDone()).isTrue();
+        assertThat(progress.getProcessed()).isEqualTo(7);
+        assertThat(progress.getCreated()).isEqualTo(1);
+        assertThat(progress.getDuplicates()).isEqualTo(2);
+        assertThat(progress.getFailed()).isEqualTo(4);
+        assertThat(persistedIds).containsExactly(603);
+
+        // Lines 2 and 3 are the same film, whichever reaches the hydration stage second is the duplicate
+        List<JsonObject> lines = lines(output);
+        assertThat(lines).filteredOn(line -> line.has("line"))
+                .extracting(line -> line.get("line").getAsInt() + " " + line.get("status").getAsString())
+                .containsAnyOf("2 DUPLICATE", "3 DUPLICATE")
+                .contains("4 DUPLICATE", "6 FAILED", "7 FAILED", "8 FAILED", "9 FAILED")
+                .hasSize(6);
+        assertThat(lines).filteredOn(line -> line.has("line") && line.get("line").getAsInt() == 8)
+                .singleElement()
+                .satisfies(line -> assertThat(line.get("error").getAsString()).isEqualTo("Rate must be at most 10"));
+        assertThat(lines.get(lines.size() - 1).get("done").getAsBoolean()).isTrue();
+    }
+
+    @Test
+    void jsonImportIsStreamedItemByItem() throws Exception {
+        String json = "[{\"tmdb_id\": 603, \"support\": \"Blu-ray\", \"rate\": 9},"
+                + " {\"title\": \"The Matrix\", \"year\": 2021},"
+                + " \"not an object\","
+                + " {\"tmdbId\": 603}]";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.JSON, stream(json), "en-US", "DVD", output);
+
+        assertThat(progress.getCreated()).isEqualTo(2);
+        assertThat(progress.getDuplicates()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(persistedIds).containsExactlyInAnyOrder(603, 624860);
+    }
+
+    @Test
+    void filmFailingToHydrateIsImportedFromALaterLine() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.CSV, stream("tmdb_id\n11\n11\n"), "en-US", "DVD", output);
+
+        assertThat(progress.getCreated()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(progress.getDuplicates()).isZero();
+        assertThat(persistedIds).containsExactly(FLAKY_TMDB_ID);
+    }
+
+    @Test
+    void filmAddedConcurrentlyOnlyFailsItsOwnLine() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.CSV, stream("tmdb_id\n603\n77\n680\n"), "en-US", "DVD", output);
+
+        assertThat(progress.getCreated()).isEqualTo(2);
+        assertThat(progress.getDuplicates()).isEqualTo(1);
+        assertThat(progress.getFailed()).isZero();
+        assertThat(persistedIds).containsExactlyInAnyOrder(603, 680);
+        assertThat(lines(output)).filteredOn(line -> line.has("line"))
+                .extracting(line -> line.get("line").getAsInt() + " " + line.get("status").getAsString())
+                .containsExactly("3 DUPLICATE");
+    }
+
+    @Test
+    void importsBeyondTheLimitAreRejected() throws Exception {
+        PipedOutputStream upload = new PipedOutputStream();
+        PipedInputStream input = new PipedInputStream(upload);
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            // Waits for the rest of its file, holding the only import slot
+            Future<FilmDTO.ImportProgress> first = client.submit(() -> importService.importCollection(LIBRARY_ID,
+                    CollectionImportService.Format.CSV, input, "en-US", "DVD", new ByteArrayOutputStream()));
+            upload.write("tmdb_id\n603\n".getBytes(StandardCharsets.UTF_8));
+            upload.flush();
+            // The parser consumed the first line: the import is running
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (input.available() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThatThrownBy(() -> importService.importCollection(LIBRARY_ID, CollectionImportService.Format.CSV,
+                    stream("tmdb_id\n680\n"), "en-US", "DVD", new ByteArrayOutputStream()))
+                    .isInstanceOf(RejectedExecutionException.class);
+
+            upload.close();
+            assertThat(first.get(5, TimeUnit.SECONDS).getCreated()).isEqualTo(1);
+            assertThat(importService.importCollection(LIBRARY_ID, CollectionImportService.Format.CSV,
+                    stream("tmdb_id\n680\n"), "en-US", "DVD", new ByteArrayOutputStream()).getCreated()).isEqualTo(1);
+        } finally {
+            client.shutdownNow();
+        }
+    }
+
+    @Test
+    void truncatedJsonStopsTheImportWithAnError() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.JSON, stream("[{\"tmdbId\": 603}, {\"tmdbId\""), "en-US", "DVD", output);
+
+        assertThat(progress.isDone()).isTrue();
+        assertThat(progress.getCreated()).isEqualTo(1);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(lines(output)).anySatisfy(line ->
+                assertThat(line.has("error") && line.get("error").getAsString().startsWith("Malformed file")).isTrue());
+    }
+
+    @Test
+    void largeFileIsImportedInBoundedBatches() throws Exception {
+        int films = 100_000;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        FilmDTO.ImportProgress progress = importService.importCollection(LIBRARY_ID,
+                CollectionImportService.Format.CSV, generatedCsv(films), "en-US", "DVD", output);
+
+        assertThat(progress.getCreated()).isEqualTo(films);
+        assertThat(progress.getFailed()).isZero();
+        assertThat(persisted.get()).isEqualTo(films);
+        assertThat(batches.get()).isEqualTo(films / FilmService.PERSIST_BATCH_SIZE);
+    }
+
+    /**
+     * CSV generated while it is read, so the test itself does not hold the whole file in memory.
+     */
+    private InputStream generatedCsv(int films) {
+        Enumeration<InputStream> chunks = new Enumeration<>() {
+            private int next = -1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < films;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                String line = next < 0 ? "tmdb_id,rate\n" : (1_000_000 + next) + ",7\n";
+                next++;
+                return stream(line);
+            }
+        };
+        return new SequenceInputStream(chunks);
+    }
+
+    private List<JsonObject> lines(ByteArrayOutputStream output) {
+        return output.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> gson.fromJson(line, JsonObject.class))
+                .toList();
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Film film(int id, String support) {
+        Film film = new Film();
+        film.setId(id);
+        film.setTitle("Film " + id);
+        film.setSupport(support);
+        film.setDirector(new Person("Jane", "Director"));
+        film.setActors(new ArrayList<>());
+        return film;
+    }
+
+}
@@ -0,0 +1,170 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.Validator;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+@Transactional
+class FilmImportServiceTests {
+
+    private static final int NEW_FILMS = 30;
+    private static final int UNKNOWN_TMDB_ID = 999_999;
+
+    @Autowired
+    private FilmImportService filmImportService;
+
+    @Autowired
+    private FilmRepository filmRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private Validator validator;
+
+    @MockitoBean
+    private TMDBService tmdbService;
+
+    private Library library;
+
+    @BeforeEach
+    void setUp() {
+        library = libraryRepository.save(new Library("bulk-owner"));
+        Library otherLibrary = libraryRepository.save(new Library("bulk-other-owner"));
+        filmRepository.save(film(200_001, otherLibrary.getId()));
+        filmRepository.save(film(200_002, library.getId()));
+        entityManager.flush();
+        entityManager.clear();
+
+        when(tmdbService.getFilmFromTMDB(anyInt(), anyString(), anyString()))
+                .thenAnswer(invocation -> film(invocation.getArgument(0), null));
+        when(tmdbService.getFilmFromTMDB(eq(UNKNOWN_TMDB_ID), anyString(), anyString()))
+                .thenThrow(new RuntimeException("Error fetching film from TMDB"));
+    }
+
+    @Test
+    void addFilmsReportsEachItemAndInsertsInBatches() {
+        List<FilmDTO.Request> requests = new ArrayList<>();
+        for (int i = 1; i <= NEW_FILMS; i++) {
+            requests.add(request(300_000 + i));
+        }
+        requests.add(request(200_002));
+        requests.add(request(200_001));
+        requests.add(request(300_001));
+        requests.add(new FilmDTO.Request(300_100, null, "DVD", null, null));
+        requests.add(request(UNKNOWN_TMDB_ID));
+        Statistics statistics = statistics();
+
+        FilmDTO.BulkResponse response = filmImportService.addFilms(requests, library.getId());
+
+        assertThat(response.getCreated()).isEqualTo(NEW_FILMS);
+        assertThat(response.getDuplicates()).isEqualTo(2);
+        assertThat(response.getFailed()).isEqualTo(3);
+        assertThat(response.getResults()).extracting(FilmDTO.BulkItemResult::getStatus).endsWith(
+                FilmDTO.BulkStatus.DUPLICATE,
+                FilmDTO.BulkStatus.FAILED,
+                FilmDTO.BulkStatus.DUPLICATE,
+                FilmDTO.BulkStatus.FAILED,
+                FilmDTO.BulkStatus.FAILED);
+        assertThat(response.getResults().get(0).getFilm().getActors()).hasSize(2);
+
+        // One duplicate lookup, one batched statement for the films, one for their actors and the library version bump
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(NEW_FILMS);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(4);
+        assertThat(filmRepository.findByLibraryId(library.getId())).hasSize(NEW_FILMS + 1)
+                .allSatisfy(film -> assertThat(film.getActors()).hasSize(2));
+    }
+
+    @Test
+    void filmAddedConcurrentlyIsReportedAsDuplicateWhileTheOthersAreCreated() {
+        int concurrentTmdbId = 300_202;
+        FilmRepository.LibraryView concurrent = mock(FilmRepository.LibraryView.class);
+        when(concurrent.getId()).thenReturn(concurrentTmdbId);
+        when(concurrent.getLibraryId()).thenReturn(library.getId());
+        // The duplicate check runs before the concurrent add, the lookup after the conflict sees it
+        FilmRepository racingRepository = mock(FilmRepository.class);
+        when(racingRepository.findLibraryIdsByIdIn(anyCollection())).thenReturn(List.of());
+        when(racingRepository.findLibraryIdsByIdIn(eq(List.of(concurrentTmdbId)))).thenReturn(List.of(concurrent));
+        FilmService racingFilmService = mock(FilmService.class);
+        when(racingFilmService.persistFilms(anyList())).thenAnswer(invocation -> {
+            List<Film> films = invocation.getArgument(0);
+            if (films.stream().anyMatch(film -> film.getId() == concurrentTmdbId)) {
+                throw new DataIntegrityViolationException("Film already exists");
+            }
+            return films.stream().map(FilmService::mapToFilmResponse).toList();
+        });
+        FilmImportService racingImportService =
+                new FilmImportService(racingFilmService, tmdbService, racingRepository, validator, 2, 100);
+
+        try {
+            FilmDTO.BulkResponse response = racingImportService.addFilms(
+                    List.of(request(300_201), request(concurrentTmdbId), request(300_203)), library.getId());
+
+            assertThat(response.getCreated()).isEqualTo(2);
+            assertThat(response.getDuplicates()).isEqualTo(1);
+            assertThat(response.getResults()).extracting(FilmDTO.BulkItemResult::getStatus).containsExactly(
+                    FilmDTO.BulkStatus.CREATED,
+                    FilmDTO.BulkStatus.DUPLICATE,
+                    FilmDTO.BulkStatus.CREATED);
+        } finally {
+            racingImportService.shutdown();
+        }
+    }
+
+    private FilmDTO.Request request(int tmdbId) {
+        return new FilmDTO.Request(tmdbId, "en-US", "Blu-ray", 8.0f, null);
+    }
+
+    private Film film(int id, String libraryId) {
+        Film film = new Film();
+        film.setId(id);
+        film.setLibraryId(libraryId);
+        film.setTitle("Film " + id);
+        film.setYear("2000");
+        film.setRate(0.0f);
+        film.setDirector(new Person("Jane", "Director"));
+        film.setActors(new ArrayList<>(List.of(
+                new Person("First", "Actor"),
+                new Person("Second", "Actor"))));
+        return film;
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+}
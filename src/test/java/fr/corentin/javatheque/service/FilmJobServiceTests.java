@@ -0,0 +1,138 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FilmJobServiceTests {
+
+    private static final String LIBRARY_ID = "job-library";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final FilmService filmService = mock(FilmService.class);
+    private FilmJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        when(filmService.addFilm(any(FilmDTO.Request.class), anyString())).thenAnswer(invocation -> {
+            FilmDTO.Request request = invocation.getArgument(0);
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (request.getTmdbId() == 550) {
+                throw new IllegalArgumentException("Film already exists in this library");
+            }
+            if (request.getTmdbId() == 404) {
+                throw new TMDBUnavailableException("TMDB movie 404 is unavailable");
+            }
+            FilmDTO.Response response = new FilmDTO.Response();
+            response.setId(request.getTmdbId());
+            response.setLibraryId(invocation.getArgument(1));
+            return response;
+        });
+        jobService = new FilmJobService(filmService, 1, 1, Duration.ofMinutes(5), 1, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    void jobsForTheSameFilmAreDeduplicatedUntilTheyComplete() throws Exception {
+        FilmJobService.Job job = jobService.submit(request(603), LIBRARY_ID);
+        FilmJobService.Job again = jobService.submit(request(603), LIBRARY_ID);
+
+        assertThat(again).isSameAs(job);
+        assertThat(job.toDto().getStatus()).isIn(FilmDTO.JobStatus.QUEUED, FilmDTO.JobStatus.RUNNING);
+
+        release.countDown();
+        FilmDTO.Job done = job.completion().get(5, TimeUnit.SECONDS).toDto();
+
+        assertThat(done.getStatus()).isEqualTo(FilmDTO.JobStatus.SUCCEEDED);
+        assertThat(done.getFilm().getId()).isEqualTo(603);
+        assertThat(done.getCompletedAt()).isAfterOrEqualTo(done.getSubmittedAt());
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("film.jobs.submitted").tag("result", "deduplicated").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("film.jobs.latency").tag("status", "succeeded").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueRejectsNewJobs() {
+        // The first job goes straight to the only worker, the second one fills the queue
+        jobService.submit(request(1), LIBRARY_ID);
+        jobService.submit(request(2), LIBRARY_ID);
+
+        assertThatThrownBy(() -> jobService.submit(request(3), LIBRARY_ID))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.get("film.jobs.queue.depth").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("film.jobs.submitted").tag("result", "rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedJobReportsItsErrorToItsLibraryOnly() throws Exception {
+        release.countDown();
+        FilmJobService.Job job = jobService.submit(request(550), LIBRARY_ID);
+        job.completion().get(5, TimeUnit.SECONDS);
+
+        assertThat(jobService.getJob(job.getId(), LIBRARY_ID)).get()
+                .extracting(FilmJobService.Job::toDto)
+                .satisfies(dto -> {
+                    assertThat(dto.getStatus()).isEqualTo(FilmDTO.JobStatus.FAILED);
+                    assertThat(dto.getError()).isEqualTo("Film already exists in this library");
+                });
+        assertThat(jobService.getJob(job.getId(), "other-library")).isEmpty();
+    }
+
+    @Test
+    void unreachableTMDBIsReportedAsSuch() throws Exception {
+        release.countDown();
+        FilmJobService.Job job = jobService.submit(request(404), LIBRARY_ID);
+
+        FilmDTO.Job done = job.completion().get(5, TimeUnit.SECONDS).toDto();
+
+        assertThat(done.getStatus()).isEqualTo(FilmDTO.JobStatus.FAILED);
+        assertThat(done.getError()).isEqualTo("TMDB movie 404 is unavailable");
+    }
+
+    @Test
+    void pendingJobsStayReadableBeyondTheFinishedJobsBound() throws Exception {
+        // One job running and one queued, while only one finished job is kept
+        FilmJobService.Job running = jobService.submit(request(1), LIBRARY_ID);
+        FilmJobService.Job queued = jobService.submit(request(2), LIBRARY_ID);
+
+        assertThat(jobService.getJob(running.getId(), LIBRARY_ID)).containsSame(running);
+        assertThat(jobService.getJob(queued.getId(), LIBRARY_ID)).containsSame(queued);
+
+        release.countDown();
+        queued.completion().get(5, TimeUnit.SECONDS);
+        assertThat(jobService.getJob(queued.getId(), LIBRARY_ID)).containsSame(queued);
+    }
+
+    private FilmDTO.Request request(int tmdbId) {
+        return new FilmDTO.Request(tmdbId, "en-US", "DVD", null, null);
+    }
+
+}
@@ -0,0 +1,154 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class FilmServiceTests {
+
+    private static final int FILM_COUNT = 50;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private FilmRepository filmRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Library library;
+
+    @BeforeEach
+    void setUp() {
+        library = libraryRepository.save(new Library("query-count-owner"));
+        for (int i = 1; i <= FILM_COUNT; i++) {
+            Film film = new Film();
+            film.setId(100_000 + i);
+            film.setLibraryId(library.getId());
+            film.setTitle("Film " + i);
+            film.setYear("2000");
+            film.setRate(5.0f);
+            film.setDirector(new Person("Jane", "Director"));
+            film.setActors(new ArrayList<>(List.of(
+                    new Person("First", "Actor"),
+                    new Person("Second", "Actor"))));
+            filmRepository.save(film);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void getFilmsByLibraryLoadsActorsInASingleQuery() {
+        Statistics statistics = statistics();
+
+        List<FilmDTO.Response> films = filmService.getFilmsByLibrary(library.getId());
+
+        assertThat(films).hasSize(FILM_COUNT);
+        assertThat(films).allSatisfy(film -> assertThat(film.getActors()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void searchFilmsInLibraryLoadsActorsInASingleQuery() {
+        Statistics statistics = statistics();
+
+        List<FilmDTO.Response> films = filmService.searchFilmsInLibrary(library.getId(), "film 1");
+
+        assertThat(films).isNotEmpty();
+        assertThat(films).allSatisfy(film -> assertThat(film.getActors()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void getFilmPageWalksTheWholeLibraryWithCursors() {
+        LibraryCursor cursor = LibraryCursor.first(LibraryCursor.SortKey.TITLE, Sort.Direction.DESC);
+        List<FilmDTO.Response> seen = new ArrayList<>();
+        int pages = 0;
+
+        String next;
+        do {
+            LibraryDTO.Page page = filmService.getFilmPage(library.getId(), null, cursor, 20);
+            seen.addAll(page.getFilms());
+            pages++;
+            next = page.getNext();
+            if (next != null) {
+                cursor = LibraryCursor.decode(next);
+            }
+        } while (next != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(seen).extracting(FilmDTO.Response::getId).doesNotHaveDuplicates().hasSize(FILM_COUNT);
+        assertThat(seen).extracting(FilmDTO.Response::getTitle)
+                .isSortedAccordingTo(Comparator.<String>reverseOrder());
+    }
+
+    @Test
+    void getFilmPageLoadsActorsInBoundedQueries() {
+        Statistics statistics = statistics();
+
+        LibraryDTO.Page page = filmService.getFilmPage(library.getId(), null,
+                LibraryCursor.first(LibraryCursor.SortKey.ADDED, Sort.Direction.ASC), FILM_COUNT);
+
+        assertThat(page.getFilms()).allSatisfy(film -> assertThat(film.getActors()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void filmChangesBumpTheLibraryVersion() {
+        long version = libraryVersion();
+
+        filmService.updateFilm(100_001, new FilmDTO.Request(100_001, null, "Blu-ray", null, null));
+        filmService.deleteFilm(100_002);
+
+        assertThat(libraryVersion()).isEqualTo(version + 2);
+    }
+
+    @Test
+    void getFilmsByIdsOnlyReturnsFilmsOfTheLibrary() {
+        Library other = libraryRepository.save(new Library("other-query-count-owner"));
+        entityManager.flush();
+
+        assertThat(filmService.getFilmsByIds(library.getId(), List.of(100_002, 100_001)))
+                .extracting(FilmDTO.Response::getId).containsExactly(100_002, 100_001);
+        assertThat(filmService.getFilmsByIds(other.getId(), List.of(100_001, 100_002))).isEmpty();
+    }
+
+    private long libraryVersion() {
+        return libraryRepository.findVersionById(library.getId()).orElseThrow();
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+}
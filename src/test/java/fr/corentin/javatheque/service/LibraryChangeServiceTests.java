@@ -0,0 +1,140 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class LibraryChangeServiceTests {
+
+    @Autowired
+    private LibraryChangeService libraryChangeService;
+
+    @Autowired
+    private LibraryService libraryService;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Library library;
+
+    @BeforeEach
+    void setUp() {
+        library = libraryRepository.save(new Library("changes-owner"));
+        entityManager.flush();
+    }
+
+    @Test
+    void deltaHoldsTheLatestChangeOfEachFilm() {
+        String token = libraryService.getLibraryChanges(library.getId(), null).getToken();
+
+        filmService.persistFilms(new ArrayList<>(List.of(film(800_001), film(800_002), film(800_003))));
+        filmService.updateFilm(800_002, new FilmDTO.Request(800_002, null, "Blu-ray", 7.0f, null));
+        filmService.deleteFilm(800_003);
+        entityManager.flush();
+
+        LibraryDTO.Changes changes = libraryService.getLibraryChanges(library.getId(), token);
+
+        assertThat(changes.isResync()).isFalse();
+        assertThat(changes.getFilms()).extracting(FilmDTO.Response::getId).containsExactly(800_001, 800_002);
+        assertThat(changes.getFilms().get(1).getSupport()).isEqualTo("Blu-ray");
+        assertThat(changes.getDeleted()).containsExactly(800_003);
+
+        LibraryDTO.Changes next = libraryService.getLibraryChanges(library.getId(), changes.getToken());
+        assertThat(next.isResync()).isFalse();
+        assertThat(next.getFilms()).isEmpty();
+        assertThat(next.getDeleted()).isEmpty();
+        assertThat(next.getToken()).isEqualTo(changes.getToken());
+    }
+
+    @Test
+    void unusableTokensGetTheWholeLibrary() {
+        filmService.persistFilms(new ArrayList<>(List.of(film(800_004))));
+        entityManager.flush();
+
+        for (String token : new String[]{null, "not a token", otherLibraryToken()}) {
+            LibraryDTO.Changes changes = libraryService.getLibraryChanges(library.getId(), token);
+            assertThat(changes.isResync()).isTrue();
+            assertThat(changes.getFilms()).extracting(FilmDTO.Response::getId).containsExactly(800_004);
+        }
+    }
+
+    @Test
+    void tokensOlderThanTheCompactedJournalGetAResync() {
+        String oldToken = libraryService.getLibraryChanges(library.getId(), null).getToken();
+        filmService.persistFilms(new ArrayList<>(List.of(film(800_005))));
+        entityManager.flush();
+        String currentToken = libraryService.getLibraryChanges(library.getId(), oldToken).getToken();
+
+        entityManager.createNativeQuery("UPDATE library_changes SET changed_at = :changedAt WHERE library_id = :libraryId")
+                .setParameter("changedAt", LocalDateTime.now().minusDays(365))
+                .setParameter("libraryId", library.getId())
+                .executeUpdate();
+        assertThat(libraryChangeService.compact()).isGreaterThanOrEqualTo(1);
+
+        assertThat(libraryService.getLibraryChanges(library.getId(), oldToken).isResync()).isTrue();
+        LibraryDTO.Changes current = libraryService.getLibraryChanges(library.getId(), currentToken);
+        assertThat(current.isResync()).isFalse();
+        assertThat(current.getFilms()).isEmpty();
+    }
+
+    @Test
+    void filmOfAnotherLibraryIsNotMovedByAnAdd() {
+        filmService.persistFilms(new ArrayList<>(List.of(film(800_006))));
+        entityManager.flush();
+        Library other = libraryRepository.save(new Library("changes-other-owner"));
+        entityManager.flush();
+        String token = libraryService.getLibraryChanges(library.getId(), null).getToken();
+        String otherToken = libraryService.getLibraryChanges(other.getId(), null).getToken();
+
+        assertThatThrownBy(() -> filmService.addFilm(new FilmDTO.Request(800_006, "en-US", "DVD", null, null),
+                other.getId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Film already exists in another library");
+
+        assertThat(filmService.getFilmById(800_006).getLibraryId()).isEqualTo(library.getId());
+        assertThat(libraryService.getLibraryChanges(library.getId(), token).getToken()).isEqualTo(token);
+        assertThat(libraryService.getLibraryChanges(other.getId(), otherToken).getFilms()).isEmpty();
+    }
+
+    private String otherLibraryToken() {
+        Library other = libraryRepository.save(new Library("changes-other-owner"));
+        entityManager.flush();
+        return libraryService.getLibraryChanges(other.getId(), null).getToken();
+    }
+
+    private Film film(int id) {
+        Film film = new Film();
+        film.setId(id);
+        film.setLibraryId(library.getId());
+        film.setTitle("Film " + id);
+        film.setYear("2000");
+        film.setSupport("DVD");
+        film.setRate(0.0f);
+        film.setActors(new ArrayList<>());
+        return film;
+    }
+
+}
@@ -0,0 +1,90 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs with the 256m test heap configured in build.gradle.
+ */
+@SpringBootTest
+@Transactional
+class LibraryExportServiceTests {
+
+    private static final int FILM_COUNT = 100_000;
+    private static final int INSERT_BATCH = 5_000;
+
+    @Autowired
+    private LibraryExportService libraryExportService;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void exportsLargeLibraryAsNdjson() throws Exception {
+        Library library = libraryRepository.saveAndFlush(new Library("export-owner"));
+        insertFilms(library.getId());
+
+        LineCountingOutputStream output = new LineCountingOutputStream();
+        long exported = libraryExportService.exportLibrary(library.getId(), LibraryExportService.Format.NDJSON, output);
+
+        assertThat(exported).isEqualTo(FILM_COUNT);
+        assertThat(output.lines).isEqualTo(FILM_COUNT);
+    }
+
+    private void insertFilms(String libraryId) {
+        for (int start = 1; start <= FILM_COUNT; start += INSERT_BATCH) {
+            List<Object[]> films = new ArrayList<>();
+            List<Object[]> actors = new ArrayList<>();
+            for (int id = start; id < start + INSERT_BATCH; id++) {
+                films.add(new Object[]{id, libraryId, "Film " + id, "Synopsis of film " + id, "2000", 5.0f});
+                actors.add(new Object[]{id, "First", "Actor " + id});
+                actors.add(new Object[]{id, "Second", "Actor " + id});
+            }
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO films (id, library_id, title, description, year, rate) VALUES (?, ?, ?, ?, ?, ?)",
+                    films);
+            jdbcTemplate.batchUpdate(
+                    "INSERT INTO film_actors (film_id, actor_firstname, actor_lastname) VALUES (?, ?, ?)",
+                    actors);
+        }
+    }
+
+    /**
+     * Discards the export and only counts NDJSON records.
+     */
+    private static class LineCountingOutputStream extends OutputStream {
+
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+
+}
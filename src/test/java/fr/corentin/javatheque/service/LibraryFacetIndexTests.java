@@ -0,0 +1,64 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.LibraryDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibraryFacetIndexTests {
+
+    private final LibraryFacetIndex.FacetSnapshot snapshot = new LibraryFacetIndex.FacetSnapshot(1,
+            List.of(
+                    new Object[]{1, "Inception", "Christopher", "Nolan", "2010", "Blu-ray", "en", 9.0f},
+                    new Object[]{2, "Interstellar", "Christopher", "Nolan", "2014", "DVD", "en", 8.0f},
+                    new Object[]{3, "Amelie", "Jean-Pierre", "Jeunet", "2001", "DVD", "fr", 7.5f},
+                    new Object[]{4, "Unknown Film", null, null, "Unknown", "DVD", "fr", null}),
+            List.of(
+                    new Object[]{1, "Leonardo", "DiCaprio"},
+                    new Object[]{1, "Elliot", "Page"},
+                    new Object[]{2, "Matthew", "McConaughey"},
+                    new Object[]{3, "Audrey", "Tautou"}));
+
+    @Test
+    void combinesFacetsAndRanges() {
+        LibraryDTO.FacetQuery query = new LibraryDTO.FacetQuery();
+        query.setSupport(List.of("DVD"));
+        query.setYearFrom(2000);
+
+        assertThat(snapshot.page(snapshot.match(query, null), 0, 10)).containsExactly(3, 2);
+    }
+
+    @Test
+    void countsIgnoreTheFilterOfTheirOwnFacet() {
+        LibraryDTO.FacetQuery query = new LibraryDTO.FacetQuery();
+        query.setSupport(List.of("DVD"));
+        query.setLang(List.of("en"));
+
+        Map<String, List<LibraryDTO.FacetCount>> facets = snapshot.facets(query);
+
+        assertThat(facets.get(LibraryFacetIndex.SUPPORT)).containsExactly(
+                new LibraryDTO.FacetCount("Blu-ray", 1),
+                new LibraryDTO.FacetCount("DVD", 1));
+        assertThat(facets.get(LibraryFacetIndex.LANG)).containsExactly(
+                new LibraryDTO.FacetCount("fr", 2),
+                new LibraryDTO.FacetCount("en", 1));
+        assertThat(facets.get(LibraryFacetIndex.DIRECTOR)).containsExactly(
+                new LibraryDTO.FacetCount("Christopher Nolan", 1));
+    }
+
+    @Test
+    void filtersOnActorsAndRates() {
+        LibraryDTO.FacetQuery query = new LibraryDTO.FacetQuery();
+        query.setActor(List.of("Elliot Page", "Audrey Tautou"));
+        query.setRateMin(8.0f);
+
+        assertThat(snapshot.page(snapshot.match(query, null), 0, 10)).containsExactly(1);
+        assertThat(snapshot.facets(query).get(LibraryFacetIndex.RATE)).containsExactly(
+                new LibraryDTO.FacetCount("7", 1),
+                new LibraryDTO.FacetCount("9", 1));
+    }
+
+}
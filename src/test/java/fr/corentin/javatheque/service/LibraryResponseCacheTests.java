@@ -0,0 +1,103 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.configuration.CacheConfig;
+import fr.corentin.javatheque.dto.FilmDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibraryResponseCacheTests {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final LibraryResponseCache cache = new LibraryResponseCache(
+            new SingleFlightCache(new CacheConfig().cacheManager(DataSize.ofMegabytes(1), 100, DataSize.ofMegabytes(1)),
+                    new SimpleMeterRegistry()),
+            jsonMapper);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void unchangedLibraryIsServedFromTheSerializedBytes() throws IOException {
+        LibraryResponseCache.Body body = cache.get("library", "\"library-1\"",
+                () -> tagged("\"library-1\"", films(50)));
+        LibraryResponseCache.Body again = cache.get("library", "\"library-1\"",
+                () -> tagged("\"library-1\"", films(50)));
+
+        assertThat(again).isSameAs(body);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(body.getJson()).isEqualTo(jsonMapper.writeValueAsBytes(films(50)));
+        assertThat(body.getGzip()).isNotNull().hasSizeLessThan(body.getJson().length);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body.getGzip()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(body.getJson());
+        }
+    }
+
+    @Test
+    void newVersionReplacesThePreviousOne() {
+        cache.get("library", "\"library-1\"", () -> tagged("\"library-1\"", films(50)));
+        cache.get("library", "\"library-2\"", () -> tagged("\"library-2\"", films(51)));
+        cache.get("library", "\"library-1\"", () -> tagged("\"library-1\"", films(50)));
+
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    void librariesEvictedFromTheBudgetAreNoLongerTracked() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            String eTag = "\"library-" + i + "-1\"";
+            cache.get("library-" + i, eTag, () -> tagged(eTag, films(200)));
+        }
+
+        // About 60KB per body in a 1MB budget, removals are notified asynchronously
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.trackedLibraries() > 32 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(cache.trackedLibraries()).isLessThanOrEqualTo(32);
+    }
+
+    @Test
+    void filmsReadAtAnotherVersionAreServedWithTheirETagButNotCached() {
+        LibraryResponseCache.Body body = cache.get("library", "\"library-1\"",
+                () -> tagged("\"library-2\"", films(50)));
+        LibraryResponseCache.Body again = cache.get("library", "\"library-1\"",
+                () -> tagged("\"library-1\"", films(50)));
+
+        assertThat(body.getETag()).isEqualTo("\"library-2\"");
+        assertThat(again.getETag()).isEqualTo("\"library-1\"");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void smallBodyHasNoGzipCopy() {
+        assertThat(cache.get("library", "\"library-1\"", () -> tagged("\"library-1\"", films(0))).getGzip())
+                .isNull();
+    }
+
+    private static LibraryResponseCache.TaggedFilms tagged(String eTag, List<FilmDTO.Response> films) {
+        return new LibraryResponseCache.TaggedFilms(eTag, films);
+    }
+
+    private List<FilmDTO.Response> films(int count) {
+        loads.incrementAndGet();
+        return IntStream.range(0, count).mapToObj(i -> {
+            FilmDTO.Response film = new FilmDTO.Response();
+            film.setId(i);
+            film.setLibraryId("library");
+            film.setTitle("Film " + i);
+            film.setDescription("A film that is described at some length, " + i);
+            return film;
+        }).toList();
+    }
+
+}
@@ -0,0 +1,144 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.model.User;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import fr.corentin.javatheque.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class LibraryServiceTests {
+
+    @Autowired
+    private LibraryService libraryService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private FilmRepository filmRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        String email = UUID.randomUUID() + "@library.test";
+        user = userRepository.save(new User("Owner", "Library", email, "not-a-hash"));
+        user.setLibrary(libraryRepository.save(new Library(user.getId())));
+        user = userRepository.save(user);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void libraryIdIsLookedUpOncePerUser() {
+        Statistics statistics = statistics();
+
+        String libraryId = libraryService.getLibraryIdByOwnerId(user.getId());
+        long queries = statistics.getPrepareStatementCount();
+
+        assertThat(libraryId).isEqualTo(user.getLibrary().getId());
+        assertThat(queries).isEqualTo(1);
+        assertThat(libraryService.getLibraryIdByOwnerId(user.getId())).isEqualTo(libraryId);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(queries);
+    }
+
+    @Test
+    void deletingTheUserEvictsTheirLibraryId() {
+        Cache libraryIds = cacheManager.getCache("libraryIds");
+        libraryService.getLibraryIdByOwnerId(user.getId());
+        assertThat(libraryIds.get(user.getId())).isNotNull();
+
+        userService.deleteUser(user.getId());
+
+        assertThat(libraryIds.get(user.getId())).isNull();
+    }
+
+    @Test
+    void missingLibraryIsNotCached() {
+        assertThatThrownBy(() -> libraryService.getLibraryIdByOwnerId("no-such-user"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(cacheManager.getCache("libraryIds").get("no-such-user")).isNull();
+    }
+
+    @Test
+    void titleSearchSeesFilmsAddedThroughAnotherInstance() {
+        String libraryId = user.getLibrary().getId();
+        addBehindFilmService(900_001, "The Matrix");
+        assertThat(libraryService.searchLibraryFilms(libraryId, "matrix"))
+                .extracting(FilmDTO.Response::getId)
+                .containsExactly(900_001);
+
+        addBehindFilmService(900_002, "The Matrix Reloaded");
+
+        assertThat(libraryService.searchLibraryFilms(libraryId, "matrix"))
+                .extracting(FilmDTO.Response::getId)
+                .containsExactly(900_001, 900_002);
+    }
+
+    @Test
+    void facetsSeeFilmsAddedThroughAnotherInstance() {
+        String libraryId = user.getLibrary().getId();
+        addBehindFilmService(900_003, "Heat");
+        assertThat(libraryService.getLibraryFacets(libraryId, new LibraryDTO.FacetQuery()).getTotal()).isEqualTo(1);
+
+        addBehindFilmService(900_004, "Collateral");
+
+        LibraryDTO.FacetResult facets = libraryService.getLibraryFacets(libraryId, new LibraryDTO.FacetQuery());
+        assertThat(facets.getTotal()).isEqualTo(2);
+        assertThat(facets.getFilms()).extracting(FilmDTO.Response::getId).containsExactly(900_004, 900_003);
+    }
+
+    /**
+     * A film added by another instance: the version moves but no FilmEvent reaches this one.
+     */
+    private void addBehindFilmService(int id, String title) {
+        Film film = new Film();
+        film.setId(id);
+        film.setLibraryId(user.getLibrary().getId());
+        film.setTitle(title);
+        filmRepository.save(film);
+        entityManager.flush();
+        libraryRepository.incrementVersion(user.getLibrary().getId());
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+}
@@ -0,0 +1,148 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.dto.FilmDTO;
+import fr.corentin.javatheque.dto.LibraryDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Library;
+import fr.corentin.javatheque.model.Person;
+import fr.corentin.javatheque.repository.FilmRepository;
+import fr.corentin.javatheque.repository.LibraryRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class LibraryStatsServiceTests {
+
+    @Autowired
+    private LibraryStatsService libraryStatsService;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private FilmRepository filmRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Library library;
+
+    @BeforeEach
+    void setUp() {
+        library = libraryRepository.save(new Library("stats-owner"));
+        // Saved behind FilmService, the statistics only exist once rebuilt
+        filmRepository.save(film(700_001, "1999", "Blu-ray", 8.0f, "Lana Wachowski", "Keanu Reeves", "Carrie-Anne Moss"));
+        filmRepository.save(film(700_002, "2003", "DVD", 6.5f, "Lana Wachowski", "Keanu Reeves"));
+        filmRepository.save(film(700_003, "2010", "Blu-ray", 0.0f, "Christopher Nolan", "Leonardo DiCaprio"));
+        filmRepository.save(film(700_004, "Unknown", "DVD", 9.0f, null));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void rebuildAggregatesTheWholeLibrary() {
+        assertThat(libraryStatsService.rebuild(library.getId())).isEqualTo(4);
+
+        LibraryDTO.Stats stats = stats();
+
+        assertThat(stats.getTotalFilms()).isEqualTo(4);
+        assertThat(stats.getRatedFilms()).isEqualTo(3);
+        assertThat(stats.getAverageRate()).isEqualTo(7.83);
+        assertThat(stats.getDecades()).containsExactly(count("1990", 1), count("2000", 1), count("2010", 1));
+        assertThat(stats.getSupports()).containsExactly(count("Blu-ray", 2), count("DVD", 2));
+        assertThat(stats.getTopDirectors()).containsExactly(count("Lana Wachowski", 2), count("Christopher Nolan", 1));
+        assertThat(stats.getTopActors()).first().isEqualTo(count("Keanu Reeves", 2));
+        assertThat(stats.getTopActors()).hasSize(3);
+    }
+
+    @Test
+    void filmChangesKeepTheStatisticsEqualToARebuild() {
+        libraryStatsService.rebuild(library.getId());
+
+        filmService.updateFilm(700_002, new FilmDTO.Request(700_002, null, "Blu-ray", 7.0f, null));
+        filmService.deleteFilm(700_003);
+        filmService.persistFilms(new ArrayList<>(List.of(
+                film(700_005, "1994", "VHS", 10.0f, "Lana Wachowski", "Keanu Reeves"),
+                film(700_006, "1995", "VHS", 0.0f, "Kathryn Bigelow", "Keanu Reeves", "Keanu Reeves"))));
+        entityManager.flush();
+        LibraryDTO.Stats incremental = stats();
+
+        libraryStatsService.rebuild(library.getId());
+
+        assertThat(stats()).isEqualTo(incremental);
+        assertThat(incremental.getTotalFilms()).isEqualTo(5);
+        assertThat(incremental.getDecades()).containsExactly(count("1990", 3), count("2000", 1));
+        assertThat(incremental.getSupports()).containsExactly(count("Blu-ray", 2), count("VHS", 2), count("DVD", 1));
+        // The only film of Christopher Nolan and Leonardo DiCaprio is gone, so are their rows
+        assertThat(incremental.getTopDirectors()).extracting(LibraryDTO.FacetCount::getValue)
+                .containsExactly("Lana Wachowski", "Kathryn Bigelow");
+        assertThat(incremental.getTopActors()).first().isEqualTo(count("Keanu Reeves", 4));
+        assertThat(incremental.getTopActors()).extracting(LibraryDTO.FacetCount::getValue)
+                .doesNotContain("Leonardo DiCaprio");
+        assertThat(incremental.getAverageRate()).isEqualTo(8.5);
+    }
+
+    @Test
+    void addingAFilmOfThisLibraryToAnotherOneLeavesItsStatisticsAlone() {
+        libraryStatsService.rebuild(library.getId());
+        LibraryDTO.Stats before = stats();
+        long version = libraryRepository.findVersionById(library.getId()).orElseThrow();
+        Library other = libraryRepository.save(new Library("stats-other-owner"));
+        entityManager.flush();
+
+        assertThatThrownBy(() -> filmService.addFilm(new FilmDTO.Request(700_001, "en-US", "DVD", null, null),
+                other.getId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Film already exists in another library");
+
+        assertThat(stats()).isEqualTo(before);
+        assertThat(libraryRepository.findVersionById(library.getId())).contains(version);
+        assertThat(libraryStatsService.getStats(other.getId()).getTotalFilms()).isZero();
+    }
+
+    private LibraryDTO.Stats stats() {
+        // Statistics rows are written with plain JDBC, the persistence context must not serve stale entities
+        entityManager.clear();
+        return libraryStatsService.getStats(library.getId());
+    }
+
+    private Film film(int id, String year, String support, float rate, String director, String... actors) {
+        Film film = new Film();
+        film.setId(id);
+        film.setLibraryId(library.getId());
+        film.setTitle("Film " + id);
+        film.setYear(year);
+        film.setSupport(support);
+        film.setRate(rate);
+        if (director != null) {
+            String[] name = director.split(" ", 2);
+            film.setDirector(new Person(name[0], name[1]));
+        }
+        List<Person> cast = new ArrayList<>();
+        for (String actor : actors) {
+            String[] name = actor.split(" ", 2);
+            cast.add(new Person(name[0], name[1]));
+        }
+        film.setActors(cast);
+        return film;
+    }
+
+    private static LibraryDTO.FacetCount count(String value, int count) {
+        return new LibraryDTO.FacetCount(value, count);
+    }
+
+}
@@ -0,0 +1,60 @@
+package fr.corentin.javatheque.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibraryTitleIndexTests {
+
+    private LibraryTitleIndex.TitleIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new LibraryTitleIndex.TitleIndex(1);
+        put(1, "Le Fabuleux Destin d'Am\u00e9lie Poulain");
+        put(2, "Am\u00e9lie");
+        put(3, "The Matrix");
+        put(4, "The Matrix Reloaded");
+        put(5, "Mad Max");
+        put(7, "Banana Split");
+    }
+
+    @Test
+    void matchesSubstringsIgnoringCaseAndAccents() {
+        assertThat(search("AMELIE")).containsExactly(2, 1);
+        assertThat(search("trix rel")).containsExactly(4);
+        assertThat(search("matrix")).containsExactly(3, 4);
+    }
+
+    @Test
+    void requiresContiguousTrigrams() {
+        // Every trigram of the query is in "banana split" but the query is not a substring of it
+        assertThat(search("bananana")).isEmpty();
+    }
+
+    @Test
+    void scansTitlesForQueriesShorterThanATrigram() {
+        assertThat(search("ma")).containsExactly(5, 3, 4);
+    }
+
+    @Test
+    void followsUpdatesAndDeletes() {
+        index.remove(3);
+        put(6, "Matrix Resurrections");
+
+        assertThat(search("matrix")).containsExactly(6, 4);
+        assertThat(index.size()).isEqualTo(6);
+    }
+
+    private void put(int filmId, String title) {
+        index.put(filmId, LibraryTitleIndex.normalize(title));
+    }
+
+    private List<Integer> search(String query) {
+        return index.search(LibraryTitleIndex.normalize(query));
+    }
+
+}
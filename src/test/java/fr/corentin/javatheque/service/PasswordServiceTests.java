@@ -0,0 +1,106 @@
+package fr.corentin.javatheque.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordServiceTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    /**
+     * Hashes only once released, to saturate the executor on demand.
+     */
+    private final PasswordEncoder slowEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    };
+
+    private PasswordService passwordService;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        passwordService.shutdown();
+    }
+
+    @Test
+    void hashesAndVerifiesOnTheExecutor() {
+        passwordService = new PasswordService(new BCryptPasswordEncoder(4), 1, 4, Duration.ofSeconds(5), meterRegistry);
+
+        String hash = passwordService.encryptPassword("secret123");
+
+        assertThat(hash).startsWith("$2a$04$");
+        assertThat(passwordService.verifyPassword("secret123", hash)).isTrue();
+        assertThat(passwordService.verifyPassword("wrong", hash)).isFalse();
+        assertThat(meterRegistry.get("password.hashing.duration").tag("operation", "verify").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("password.hashing.queue.wait").tag("operation", "encode").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueIsRejectedRightAway() throws Exception {
+        passwordService = new PasswordService(slowEncoder, 1, 1, Duration.ofSeconds(5), meterRegistry);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> passwordService.encryptPassword("first"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> passwordService.encryptPassword("second"));
+        while (meterRegistry.get("password.hashing.queue.depth").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> passwordService.verifyPassword("third", "hashed:third"))
+                .isInstanceOf(PasswordHashingOverloadedException.class);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:first");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:second");
+        assertThat(meterRegistry.get("password.hashing.rejected").tag("reason", "queue_full").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void callerGivesUpAfterTheMaxWaitAndFreesItsSlot() throws Exception {
+        passwordService = new PasswordService(slowEncoder, 1, 1, Duration.ofMillis(200), meterRegistry);
+        CompletableFuture.runAsync(() -> {
+            try {
+                passwordService.encryptPassword("first");
+            } catch (PasswordHashingOverloadedException e) {
+                // Expected, the hashing outlives its max wait
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> passwordService.encryptPassword("second"))
+                .isInstanceOf(PasswordHashingOverloadedException.class);
+
+        assertThat(meterRegistry.get("password.hashing.queue.depth").gauge().value()).isZero();
+        assertThat(meterRegistry.get("password.hashing.rejected").tag("reason", "timeout").counter().count())
+                .isGreaterThanOrEqualTo(1);
+    }
+
+}
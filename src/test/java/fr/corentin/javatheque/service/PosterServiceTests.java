@@ -0,0 +1,183 @@
+package fr.corentin.javatheque.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.RestClient;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PosterServiceTests {
+
+    private static final int CALLERS = 10;
+
+    private final AtomicInteger outboundCalls = new AtomicInteger();
+    private volatile int status = 200;
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private byte[] source;
+    private PosterService posterService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = jpeg(780, 1170);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            outboundCalls.incrementAndGet();
+            try {
+                // Keep the download in flight long enough for every caller to pile up on it
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean found = status == 200 && exchange.getRequestURI().getPath().equals("/w780/abc.jpg");
+            exchange.sendResponseHeaders(found ? 200 : status == 200 ? 404 : status, found ? source.length : -1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (found) {
+                    out.write(source);
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        posterService = posterService(directory, 10_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        posterService.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentRequestsDownloadThePosterOnce() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Optional<PosterService.Poster>>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(callers.submit(() -> posterService.getPoster("w780", "abc.jpg")));
+            }
+            for (Future<Optional<PosterService.Poster>> result : results) {
+                assertThat(Files.readAllBytes(result.get().orElseThrow().getFile())).isEqualTo(source);
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        assertThat(outboundCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void thumbnailsAreResizedFromTheDownloadedSource() throws Exception {
+        PosterService.Poster poster = posterService.getPoster("w185", "abc.jpg").orElseThrow();
+
+        assertThat(poster.isExact()).isTrue();
+        assertThat(poster.getFile()).isEqualTo(directory.resolve("w185").resolve("abc.jpg"));
+        BufferedImage thumbnail = ImageIO.read(poster.getFile().toFile());
+        assertThat(thumbnail.getWidth()).isEqualTo(185);
+        assertThat(thumbnail.getHeight()).isBetween(276, 279);
+
+        assertThat(posterService.getPoster("w342", "abc.jpg")).isPresent();
+        assertThat(outboundCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void missingPostersAreEmptyAndTMDBFailuresAreReported() {
+        assertThat(posterService.getPoster("w500", "missing.jpg")).isEmpty();
+
+        status = 500;
+        assertThatThrownBy(() -> posterService.getPoster("w500", "abc.jpg"))
+                .isInstanceOf(TMDBUnavailableException.class);
+    }
+
+    @Test
+    void missingPostersAreNotAskedAgain() {
+        assertThat(posterService.getPoster("w500", "missing.jpg")).isEmpty();
+        assertThat(posterService.getPoster("w185", "missing.jpg")).isEmpty();
+
+        assertThat(outboundCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void unknownSizesAndFileNamesAreRejected() {
+        assertThatThrownBy(() -> posterService.getPoster("original", "abc.jpg"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> posterService.getPoster("w185", "..%2Fsecret.jpg"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> posterService.getPoster("w185", "abc.exe"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(outboundCalls.get()).isZero();
+    }
+
+    @Test
+    void reopenedCacheServesFilesFromDisk() throws Exception {
+        posterService.getPoster("w780", "abc.jpg");
+        posterService.shutdown();
+
+        posterService = posterService(directory, 10_000_000);
+
+        assertThat(posterService.getPoster("w780", "abc.jpg")).isPresent();
+        assertThat(outboundCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedFilesAreDeletedOverQuota() throws Exception {
+        posterService.shutdown();
+        Path old = Files.createDirectories(directory.resolve("w185")).resolve("old.jpg");
+        Files.write(old, new byte[source.length * 2]);
+        Files.setLastModifiedTime(old, FileTime.fromMillis(1000));
+        posterService = posterService(directory, source.length * 5L / 2);
+
+        posterService.getPoster("w780", "abc.jpg");
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (Files.exists(old) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(old).doesNotExist();
+        assertThat(directory.resolve("w780").resolve("abc.jpg")).exists();
+    }
+
+    private PosterService posterService(Path directory, long maxBytes) {
+        return new PosterService(RestClient.builder().baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .build(), "w780", List.of(185, 342, 500), directory, maxBytes, 2, 20, Duration.ofSeconds(5),
+                Duration.ofMinutes(10), new SimpleMeterRegistry());
+    }
+
+    private static byte[] jpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,42 @@
+package fr.corentin.javatheque.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadYourWritesGuardTests {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final ReadYourWritesGuard guard = new ReadYourWritesGuard(Duration.ofSeconds(5), 100, nanos::get);
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWritesGuard.reset();
+    }
+
+    @Test
+    void readsGoBackToTheReplicasOnceTheWindowIsOver() {
+        guard.onFilmEvent(new FilmEvent(FilmEvent.Type.ADDED, "library-1", 603, "The Matrix"));
+
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-1", "library-1")).isTrue();
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isTrue();
+        ReadYourWritesGuard.reset();
+
+        nanos.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-1", "library-1")).isFalse();
+        assertThat(ReadYourWritesGuard.isPrimaryRequired()).isFalse();
+    }
+
+    @Test
+    void writesOfOtherUsersDoNotPinTheReads() {
+        guard.recordWrite("user-2");
+
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-1", null)).isFalse();
+        assertThat(guard.requirePrimaryIfRecentlyWritten("user-2", null)).isTrue();
+    }
+
+}
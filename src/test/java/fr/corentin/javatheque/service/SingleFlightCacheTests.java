@@ -0,0 +1,26 @@
+package fr.corentin.javatheque.service;
+
+import fr.corentin.javatheque.configuration.CacheConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightCacheTests {
+
+    private final SingleFlightCache cache = new SingleFlightCache(
+            new CacheConfig().cacheManager(DataSize.ofMegabytes(1), 100, DataSize.ofMegabytes(1)),
+            new SimpleMeterRegistry());
+
+    @Test
+    void loaderErrorsDoNotLeaveThePromisePending() {
+        assertThatThrownBy(() -> cache.get("tmdbSearches", "key", () -> {
+            throw new StackOverflowError();
+        })).isInstanceOf(StackOverflowError.class);
+
+        assertThat(cache.get("tmdbSearches", "key", () -> "loaded")).isEqualTo("loaded");
+    }
+
+}
@@ -0,0 +1,183 @@
+package fr.corentin.javatheque.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TMDBDiskCacheTests {
+
+    private static final Duration TTL = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void entriesSurviveARestart() {
+        TMDBDiskCache cache = open(1 << 20, 8 << 20);
+        cache.put("tmdbMovies", "603_en-US", "{\"title\":\"The Matrix\"}");
+        cache.put("tmdbMovies", "603_en-US", "{\"title\":\"Matrix\"}");
+        cache.put("tmdbSearches", "matrix_en-US_1", "{\"results\":[]}");
+        cache.close();
+
+        TMDBDiskCache reopened = open(1 << 20, 8 << 20);
+
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.get("tmdbMovies", "603_en-US")).isEqualTo("{\"title\":\"Matrix\"}");
+        assertThat(reopened.get("tmdbSearches", "matrix_en-US_1")).isEqualTo("{\"results\":[]}");
+        assertThat(reopened.get("tmdbSearches", "unknown")).isNull();
+        reopened.close();
+    }
+
+    @Test
+    void truncatedSegmentIsRecoveredUpToItsLastCompleteRecord() throws IOException {
+        TMDBDiskCache cache = open(1 << 20, 8 << 20);
+        cache.put("tmdbMovies", "1", "first");
+        cache.put("tmdbMovies", "2", "second");
+        cache.put("tmdbMovies", "3", "third");
+        cache.close();
+
+        // Simulate a crash in the middle of the last write
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        TMDBDiskCache recovered = open(1 << 20, 8 << 20);
+        assertThat(recovered.get("tmdbMovies", "1")).isEqualTo("first");
+        assertThat(recovered.get("tmdbMovies", "2")).isEqualTo("second");
+        assertThat(recovered.get("tmdbMovies", "3")).isNull();
+        assertThat(Files.size(segment)).isLessThan(size - 3);
+
+        recovered.put("tmdbMovies", "3", "third again");
+        recovered.close();
+
+        TMDBDiskCache reopened = open(1 << 20, 8 << 20);
+        assertThat(reopened.size()).isEqualTo(3);
+        assertThat(reopened.get("tmdbMovies", "3")).isEqualTo("third again");
+        reopened.close();
+    }
+
+    @Test
+    void corruptedRecordStopsRecovery() throws IOException {
+        TMDBDiskCache cache = open(1 << 20, 8 << 20);
+        cache.put("tmdbMovies", "1", "first");
+        cache.put("tmdbMovies", "2", "second");
+        cache.close();
+
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        TMDBDiskCache recovered = open(1 << 20, 8 << 20);
+        assertThat(recovered.get("tmdbMovies", "1")).isEqualTo("first");
+        assertThat(recovered.get("tmdbMovies", "2")).isNull();
+        recovered.close();
+    }
+
+    @Test
+    void expiredEntriesAreDroppedAndTheirSegmentsCompacted() throws IOException {
+        TMDBDiskCache cache = open(256, 8 << 20);
+        for (int i = 0; i < 20; i++) {
+            cache.put("tmdbMovies", String.valueOf(i), "value " + i);
+        }
+        assertThat(segments()).hasSizeGreaterThan(2);
+
+        clock.advance(TTL.plusSeconds(1));
+        cache.put("tmdbMovies", "fresh", "still here");
+        assertThat(cache.get("tmdbMovies", "0")).isNull();
+
+        cache.compact();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.get("tmdbMovies", "fresh")).isEqualTo("still here");
+        assertThat(segments()).hasSize(1);
+        cache.close();
+    }
+
+    @Test
+    void expiredEntriesStayAvailableAsStaleCopiesUntilTheirStaleTtl() {
+        TMDBDiskCache cache = new TMDBDiskCache(directory, TTL, Duration.ofDays(1), 1 << 20, 8 << 20, clock);
+        cache.put("tmdbMovies", "603_en-US", "matrix");
+
+        clock.advance(TTL.plusSeconds(1));
+        cache.compact();
+        assertThat(cache.get("tmdbMovies", "603_en-US")).isNull();
+        assertThat(cache.getStale("tmdbMovies", "603_en-US")).isEqualTo("matrix");
+
+        clock.advance(Duration.ofDays(1));
+        assertThat(cache.getStale("tmdbMovies", "603_en-US")).isNull();
+        assertThat(cache.size()).isZero();
+        cache.close();
+    }
+
+    @Test
+    void diskUsageStaysWithinTheSizeLimit() throws IOException {
+        TMDBDiskCache cache = open(1024, 4096);
+        for (int i = 0; i < 200; i++) {
+            cache.put("tmdbMovies", String.valueOf(i), "x".repeat(100));
+        }
+
+        assertThat(cache.diskBytes()).isLessThanOrEqualTo(4096);
+        assertThat(cache.get("tmdbMovies", "199")).isEqualTo("x".repeat(100));
+        assertThat(cache.get("tmdbMovies", "0")).isNull();
+        long onDisk = 0;
+        for (Path segment : segments()) {
+            onDisk += Files.size(segment);
+        }
+        assertThat(onDisk).isLessThanOrEqualTo(4096);
+        cache.close();
+    }
+
+    private TMDBDiskCache open(long segmentBytes, long maxBytes) {
+        return new TMDBDiskCache(directory, TTL, Duration.ZERO, segmentBytes, maxBytes, clock);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> Files.isRegularFile(path)).sorted().toList();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package fr.corentin.javatheque.service;
+
+import com.google.gson.JsonSyntaxException;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TMDBMovieParserTests {
+
+    private static final String MOVIE = "{\"id\":603,\"title\":\"The Matrix\",\"overview\":\"A hacker learns the truth\","
+            + "\"genres\":[{\"id\":28,\"name\":\"Action\"}],\"poster_path\":null,\"release_date\":\"1999-03-31\"";
+
+    @Test
+    void keepsTheFirstActorsAndTheFirstDirector() {
+        String cast = IntStream.range(0, 30)
+                .mapToObj(i -> "{\"id\":" + i + ",\"known_for_department\":\"" + (i == 1 ? "Directing" : "Acting")
+                        + "\",\"name\":\"Actor " + i + "\",\"character\":{\"nested\":[1,2]}}")
+                .collect(Collectors.joining(","));
+        String credits = "{\"id\":603,\"cast\":[" + cast + "],\"crew\":["
+                + "{\"name\":\"Bill Pope\",\"job\":\"Director of Photography\"},"
+                + "{\"job\":\"Director\",\"name\":\"Lana Wachowski\"},"
+                + "{\"name\":\"Lilly Wachowski\",\"job\":\"Director\"}]}";
+
+        TMDBMovieDTO movie = TMDBMovieParser.parseMovieWithCredits(603, MOVIE + ",\"credits\":" + credits + ",\"video\":false}");
+
+        assertThat(movie.getTitle()).isEqualTo("The Matrix");
+        assertThat(movie.getOverview()).isEqualTo("A hacker learns the truth");
+        assertThat(movie.getPosterPath()).isEmpty();
+        assertThat(movie.getReleaseDate()).isEqualTo("1999-03-31");
+        assertThat(movie.getDirector()).isEqualTo("Lana Wachowski");
+        assertThat(movie.getActors()).hasSize(TMDBMovieParser.MAX_ACTORS)
+                .startsWith("Actor 0", "Actor 2")
+                .endsWith("Actor 10");
+        assertThat(TMDBMovieParser.parseMovie(603, MOVIE + "}", credits)).isEqualTo(movie);
+    }
+
+    @Test
+    void movieWithoutCreditsIsLeftToTheTwoCallPath() {
+        assertThat(TMDBMovieParser.parseMovieWithCredits(603, MOVIE + "}")).isNull();
+        assertThat(TMDBMovieParser.parseMovieWithCredits(603, MOVIE + ",\"credits\":null}")).isNull();
+    }
+
+    @Test
+    void missingCreditsListsGiveNoDirectorNorActors() {
+        TMDBMovieDTO movie = TMDBMovieParser.parseMovie(603, MOVIE + "}", "{\"id\":603}");
+
+        assertThat(movie.getDirector()).isNull();
+        assertThat(movie.getActors()).isEmpty();
+    }
+
+    @Test
+    void malformedPayloadIsRejected() {
+        assertThatThrownBy(() -> TMDBMovieParser.parseMovieWithCredits(603, MOVIE))
+                .isInstanceOf(JsonSyntaxException.class);
+        assertThatThrownBy(() -> TMDBMovieParser.parseMovie(603, "{\"overview\":\"\"}", "{}"))
+                .isInstanceOf(JsonSyntaxException.class);
+    }
+
+}
@@ -0,0 +1,330 @@
+package fr.corentin.javatheque.service;
+
+import com.sun.net.httpserver.HttpServer;
+import fr.corentin.javatheque.configuration.CacheConfig;
+import fr.corentin.javatheque.dto.TMDBMovieDTO;
+import fr.corentin.javatheque.model.Film;
+import fr.corentin.javatheque.model.Person;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TMDBServiceTests {
+
+    private static final int CALLERS = 20;
+    private static final String MOVIE = "{\"id\":603,\"title\":\"The Matrix\",\"release_date\":\"1999-03-30\"}";
+    private static final String CREDITS = "{\"cast\":[{\"name\":\"Keanu Reeves\",\"known_for_department\":\"Acting\"}],"
+            + "\"crew\":[{\"name\":\"Lana Wachowski\",\"job\":\"Director\"}]}";
+
+    private static final TMDBDiskCache NO_DISK_CACHE =
+            new TMDBDiskCache(null, Duration.ofHours(1), Duration.ZERO, 1024, 1024, Clock.systemUTC());
+
+    private final AtomicInteger outboundCalls = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile boolean supportsAppend = true;
+    private volatile boolean malformedAppend;
+    private volatile long delayMillis = 200;
+
+    private HttpServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private TMDBGovernor governor;
+    private TMDBService tmdbService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            outboundCalls.incrementAndGet();
+            try {
+                // Keep the request in flight long enough for every caller to pile up on it
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = respond(exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        governor = new TMDBGovernor(1000, 50, Duration.ofSeconds(5), 5, Duration.ofSeconds(30), meterRegistry);
+        SingleFlightCache cache = emptyCache();
+        tmdbService = tmdbService(cache, NO_DISK_CACHE, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void concurrentSearchesShareOneRequest() throws Exception {
+        List<String> results = callConcurrently();
+
+        assertThat(results).hasSize(CALLERS).containsOnly(MOVIE);
+        assertThat(outboundCalls.get()).isEqualTo(1);
+        assertThat(lookups("miss")).isEqualTo(1);
+        assertThat(lookups("coalesced") + lookups("hit")).isEqualTo(CALLERS - 1);
+    }
+
+    @Test
+    void failedLookupIsSharedButNotCached() throws Exception {
+        status = 500;
+
+        List<String> results = callConcurrently();
+
+        assertThat(results).hasSize(CALLERS).containsOnlyNulls();
+        assertThat(outboundCalls.get()).isEqualTo(1);
+        assertThat(requests("search", "server_error")).isEqualTo(1);
+
+        status = 200;
+        assertThat(tmdbService.searchMovies("matrix", "en-US", 1)).isEqualTo(MOVIE);
+        assertThat(outboundCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void filmIsHydratedInOneRequestWithAppendedCredits() {
+        Film film = tmdbService.getFilmFromTMDB(603, "en-US", "DVD");
+
+        assertThat(outboundCalls.get()).isEqualTo(1);
+        assertThat(film.getTitle()).isEqualTo("The Matrix");
+        assertThat(film.getYear()).isEqualTo("1999");
+        assertThat(film.getDirector().getLastname()).isEqualTo("Wachowski");
+        assertThat(film.getActors()).extracting(Person::getLastname).containsExactly("Reeves");
+        assertThat(requests("movie_with_credits", "success")).isEqualTo(1);
+    }
+
+    @Test
+    void filmHydrationFallsBackToTwoRequestsWithoutAppendedCredits() {
+        supportsAppend = false;
+
+        Film film = tmdbService.getFilmFromTMDB(603, "en-US", "DVD");
+
+        assertThat(outboundCalls.get()).isEqualTo(3);
+        assertThat(film.getDirector().getLastname()).isEqualTo("Wachowski");
+        assertThat(film.getActors()).hasSize(1);
+    }
+
+    @Test
+    void malformedCombinedPayloadFallsBackToTwoRequests() {
+        malformedAppend = true;
+
+        Film film = tmdbService.getFilmFromTMDB(603, "en-US", "DVD");
+
+        assertThat(outboundCalls.get()).isEqualTo(3);
+        assertThat(film.getTitle()).isEqualTo("The Matrix");
+        assertThat(film.getDirector().getLastname()).isEqualTo("Wachowski");
+    }
+
+    @Test
+    void cachedMovieIsReusedWithoutRequests() {
+        tmdbService.getFilmFromTMDB(603, "en-US", "DVD");
+        Film film = tmdbService.getFilmFromTMDB(603, "en-US", "Blu-ray");
+
+        assertThat(outboundCalls.get()).isEqualTo(1);
+        assertThat(film.getSupport()).isEqualTo("Blu-ray");
+        assertThat(film.getActors()).extracting(Person::getFirstname).containsExactly("Keanu");
+    }
+
+    @Test
+    void diskCacheServesMoviesAndSearchesAfterARestart(@TempDir Path directory) {
+        TMDBDiskCache diskCache = new TMDBDiskCache(directory, Duration.ofDays(1), Duration.ZERO, 1 << 20, 8 << 20, Clock.systemUTC());
+        TMDBService beforeRestart = tmdbService(emptyCache(), diskCache, true);
+        beforeRestart.getFilmFromTMDB(603, "en-US", "DVD");
+        beforeRestart.searchMovies("matrix", "en-US", 1);
+        diskCache.close();
+
+        TMDBDiskCache reopened = new TMDBDiskCache(directory, Duration.ofDays(1), Duration.ZERO, 1 << 20, 8 << 20, Clock.systemUTC());
+        TMDBService afterRestart = tmdbService(emptyCache(), reopened, true);
+        Film film = afterRestart.getFilmFromTMDB(603, "en-US", "DVD");
+        String search = afterRestart.searchMovies("matrix", "en-US", 1);
+        reopened.close();
+
+        assertThat(outboundCalls.get()).isEqualTo(2);
+        assertThat(film.getTitle()).isEqualTo("The Matrix");
+        assertThat(film.getDirector().getLastname()).isEqualTo("Wachowski");
+        assertThat(search).isEqualTo(MOVIE);
+    }
+
+    @Test
+    void openCircuitServesStaleEntriesWithoutCallingTMDB(@TempDir Path directory) {
+        governor = new TMDBGovernor(1000, 50, Duration.ofSeconds(5), 3, Duration.ofMinutes(1), meterRegistry);
+        // Entries expire right away but stay available as stale copies for a day
+        TMDBDiskCache diskCache = new TMDBDiskCache(directory, Duration.ZERO, Duration.ofDays(1),
+                1 << 20, 8 << 20, Clock.systemUTC());
+        tmdbService(emptyCache(), diskCache, true).searchMovies("matrix", "en-US", 1);
+
+        status = 500;
+        TMDBService failing = tmdbService(emptyCache(), diskCache, true);
+        for (int page = 2; page <= 4; page++) {
+            assertThat(failing.searchMovies("matrix", "en-US", page)).isNull();
+        }
+        assertThat(governor.getState()).isEqualTo(TMDBGovernor.State.OPEN);
+        int callsWhenOpened = outboundCalls.get();
+
+        assertThat(failing.searchMovies("matrix", "en-US", 1)).isEqualTo(MOVIE);
+        assertThat(failing.searchMovies("matrix", "en-US", 1)).isEqualTo(MOVIE);
+        assertThat(failing.searchMovies("matrix", "en-US", 5)).isNull();
+
+        assertThat(outboundCalls.get()).isEqualTo(callsWhenOpened);
+        assertThat(meterRegistry.get("tmdb.governor.rejected").tag("reason", "circuit_open").counter().count())
+                .isEqualTo(3);
+        assertThat(meterRegistry.get("tmdb.governor.state").gauge().value()).isEqualTo(2);
+        diskCache.close();
+    }
+
+    @Test
+    void circuitClosesAgainOnceAProbeSucceeds() throws Exception {
+        governor = new TMDBGovernor(1000, 50, Duration.ofSeconds(5), 1, Duration.ofMillis(300), meterRegistry);
+        TMDBService service = tmdbService(emptyCache(), NO_DISK_CACHE, true);
+        status = 500;
+        assertThat(service.searchMovies("matrix", "en-US", 1)).isNull();
+        assertThat(governor.getState()).isEqualTo(TMDBGovernor.State.OPEN);
+
+        status = 200;
+        Thread.sleep(400);
+        assertThat(governor.getState()).isEqualTo(TMDBGovernor.State.HALF_OPEN);
+        assertThat(service.searchMovies("matrix", "en-US", 1)).isEqualTo(MOVIE);
+        assertThat(governor.getState()).isEqualTo(TMDBGovernor.State.CLOSED);
+    }
+
+    @Test
+    void slowTMDBIsBoundedByTimeoutsAndTheBulkhead() throws Exception {
+        delayMillis = 3_000;
+        governor = new TMDBGovernor(1000, 2, Duration.ofMillis(100), 100, Duration.ofMinutes(1), meterRegistry);
+        TMDBService service = tmdbService(emptyCache(), NO_DISK_CACHE, true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            long start = System.nanoTime();
+            List<Future<String>> futures = new ArrayList<>();
+            for (int page = 1; page <= 6; page++) {
+                int requestedPage = page;
+                futures.add(executor.submit(() -> service.searchMovies("matrix", "en-US", requestedPage)));
+            }
+            for (Future<String> future : futures) {
+                assertThat(future.get()).isNull();
+            }
+            long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            assertThat(elapsedMillis).isLessThan(2_000);
+            assertThat(outboundCalls.get()).isEqualTo(2);
+            assertThat(meterRegistry.get("tmdb.governor.rejected").tag("reason", "bulkhead_full").counter().count())
+                    .isEqualTo(4);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void tokenBucketRejectsBeyondItsBurst() {
+        TMDBGovernor.TokenBucket bucket = new TMDBGovernor.TokenBucket(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.reserve(0)).isZero();
+        }
+        assertThat(bucket.reserve(0)).isEqualTo(-1);
+        assertThat(bucket.reserve(Duration.ofSeconds(1).toNanos())).isPositive();
+    }
+
+    @Test
+    void movieWeightGrowsWithItsContent() {
+        TMDBMovieDTO small = new TMDBMovieDTO(1, "Up", "", "", "2009-05-29", null, List.of());
+        TMDBMovieDTO large = new TMDBMovieDTO(2, "Up", "x".repeat(5_000), "", "2009-05-29", "Pete Docter",
+                List.of("Ed Asner", "Jordan Nagai"));
+
+        assertThat(large.estimatedBytes()).isGreaterThan(small.estimatedBytes() + 10_000);
+    }
+
+    @Test
+    void twoRequestHydrationCanBeForced() {
+        TMDBService twoCalls = tmdbService(emptyCache(), NO_DISK_CACHE, false);
+
+        Film film = twoCalls.getFilmFromTMDB(603, "en-US", "DVD");
+
+        assertThat(outboundCalls.get()).isEqualTo(2);
+        assertThat(film.getDirector().getLastname()).isEqualTo("Wachowski");
+    }
+
+    private List<String> callConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return tmdbService.searchMovies("matrix", "en-US", 1);
+                }));
+            }
+            start.countDown();
+
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TMDBService tmdbService(SingleFlightCache cache, TMDBDiskCache diskCache, boolean appendCredits) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(Duration.ofSeconds(1));
+        requestFactory.setReadTimeout(Duration.ofMillis(500));
+        return new TMDBService("test-key", "http://127.0.0.1:" + server.getAddress().getPort(),
+                RestClient.builder().requestFactory(requestFactory), cache, diskCache, governor, appendCredits);
+    }
+
+    private SingleFlightCache emptyCache() {
+        return new SingleFlightCache(new CacheConfig().cacheManager(DataSize.ofMegabytes(1), 100, DataSize.ofMegabytes(1)), meterRegistry);
+    }
+
+    private String respond(URI uri) {
+        if (uri.getPath().endsWith("/credits")) {
+            return CREDITS;
+        }
+        if (supportsAppend && uri.getQuery() != null && uri.getQuery().contains("append_to_response=credits")) {
+            String movieWithCredits = MOVIE.substring(0, MOVIE.length() - 1) + ",\"credits\":" + CREDITS + "}";
+            return malformedAppend ? movieWithCredits.substring(0, movieWithCredits.length() / 2) : movieWithCredits;
+        }
+        return MOVIE;
+    }
+
+    private double lookups(String result) {
+        var counter = meterRegistry.find("cache.single.flight").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private long requests(String endpoint, String outcome) {
+        var timer = meterRegistry.find("tmdb.requests").tag("endpoint", endpoint).tag("outcome", outcome).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+}